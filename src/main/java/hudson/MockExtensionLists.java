@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 import jenkins.model.Jenkins;
 import org.jenkinsci.infra.tools.HyperLocalPluginManager;
+import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
@@ -21,9 +22,10 @@ import org.mockito.stubbing.Answer;
  * to protected access in {@link ExtensionList}.
  */
 public class MockExtensionLists {
-    private static Map<String, ExtensionList<?>> extensionLists = new HashMap<String, ExtensionList<?>>();
+    private final Map<String, ExtensionList<?>> extensionLists = new HashMap<String, ExtensionList<?>>();
 
-    public ExtensionList<?> getMockExtensionList(HyperLocalPluginManager hlpm, Jenkins hudson, Class<?> type) {
+    public synchronized ExtensionList<?> getMockExtensionList(
+            HyperLocalPluginManager hlpm, Jenkins hudson, Class<?> type) {
         if (SaveableListener.class.equals(type)) {
             ExtensionList<?> ret = mock(ExtensionList.class);
             doReturn(Collections.emptyIterator()).when(ret).iterator();
@@ -38,6 +40,16 @@ public class MockExtensionLists {
         }
     }
 
+    /**
+     * Forgets the extension lists, along with the extensions they hold.
+     */
+    public synchronized void clear() {
+        for (ExtensionList<?> list : extensionLists.values()) {
+            Mockito.framework().clearInlineMock(list);
+        }
+        extensionLists.clear();
+    }
+
     private class MockExtensionList<T> {
         ExtensionList<T> mockExtensionList;
 
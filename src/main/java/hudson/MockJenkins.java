@@ -24,15 +24,19 @@ import hudson.model.Descriptor;
 import hudson.model.Hudson;
 import java.io.File;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
 import javax.servlet.ServletContext;
 import jenkins.install.InstallState;
 import jenkins.model.Jenkins;
 import org.jenkinsci.infra.tools.HyperLocalPluginManager;
+import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 public class MockJenkins {
     private MockExtensionLists mockLookup = new MockExtensionLists();
+    private final List<Jenkins> mocks = new ArrayList<>();
 
     /**
      * There are a few methods that need to be mocked in order for setup to work
@@ -96,6 +100,19 @@ public class MockJenkins {
                 .when(mockJenkins)
                 .getPlugin(any(Class.class));
 
+        mocks.add(mockJenkins);
         return mockJenkins;
     }
+
+    /**
+     * Drops the extension lists and the state of the mocks created here, which
+     * would otherwise keep the plugin manager and its classloaders reachable.
+     */
+    public void release() {
+        mockLookup.clear();
+        for (Jenkins mockJenkins : mocks) {
+            Mockito.framework().clearInlineMock(mockJenkins);
+        }
+        mocks.clear();
+    }
 }
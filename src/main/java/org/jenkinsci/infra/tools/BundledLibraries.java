@@ -0,0 +1,368 @@
+package org.jenkinsci.infra.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Serves the byte-identical library jars that several plugins bundle in
+ * {@code WEB-INF/lib} from one shared classloader each, so that their classes
+ * get defined once rather than once per plugin.
+ *
+ * Jars are identified by their SHA-256. Before the plugins get inspected,
+ * {@link #findDuplicates} looks for the jars bundled by at least two of them;
+ * only those are candidates. A candidate is only shared when that does not
+ * change what its classes can see: every class it refers to must be in the jar
+ * itself or visible from core, and it must not declare extensions or services,
+ * which need to be found next to the plugin's own classes. Other jars stay in
+ * the plugin's classloader as usual.
+ *
+ * Enabled with {@link HyperLocalPluginManager.ModClassicPluginStrategy#shareBundledLibraries()}.
+ */
+public final class BundledLibraries {
+    private static final Logger LOG = Logger.getLogger(BundledLibraries.class.getName());
+
+    private final ClassLoader coreClassLoader;
+
+    /** Keyed by jar digest. */
+    private final ConcurrentMap<String, Library> libraries = new ConcurrentHashMap<>();
+
+    /** Digests of the jars bundled by more than one plugin. */
+    private final Set<String> duplicates = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Plugin short name and file name, e.g. {@code snakeyaml-api:snakeyaml-1.30.jar},
+     * of the jars having one of the {@link #duplicates} digests; no other jar
+     * needs to be hashed again.
+     */
+    private final Set<String> candidates = ConcurrentHashMap.newKeySet();
+
+    BundledLibraries(ClassLoader coreClassLoader) {
+        this.coreClassLoader = coreClassLoader;
+    }
+
+    /**
+     * Finds the library jars bundled by more than one of the plugins about to
+     * be inspected. Jars are first matched by the size and CRC recorded in the
+     * central directories of the archives, and only those matching are hashed.
+     */
+    void findDuplicates(List<File> archives) {
+        Map<String, Set<String>> pluginsBySizeAndCrc = new HashMap<>();
+        Map<PluginArchive, List<ZipEntry>> jars = new LinkedHashMap<>();
+        for (File arc : archives) {
+            try (ZipFile zip = new ZipFile(arc)) {
+                PluginArchive archive = PluginArchive.read(arc);
+                List<ZipEntry> libs = new ArrayList<>();
+                for (ZipEntry e : Collections.list(zip.entries())) {
+                    if (!e.isDirectory() && archive.isLibrary(e.getName())) {
+                        libs.add(e);
+                        pluginsBySizeAndCrc
+                                .computeIfAbsent(e.getSize() + ":" + e.getCrc(), k -> new HashSet<>())
+                                .add(archive.getShortName());
+                    }
+                }
+                jars.put(archive, libs);
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Failed to list the libraries of " + arc, e);
+            }
+        }
+
+        Map<String, Set<String>> pluginsByDigest = new HashMap<>();
+        Map<String, Set<String>> jarsByDigest = new HashMap<>();
+        for (Map.Entry<PluginArchive, List<ZipEntry>> e : jars.entrySet()) {
+            PluginArchive archive = e.getKey();
+            try (ZipFile zip = new ZipFile(archive.getFile())) {
+                for (ZipEntry lib : e.getValue()) {
+                    if (pluginsBySizeAndCrc.get(lib.getSize() + ":" + lib.getCrc()).size() < 2) {
+                        continue;
+                    }
+                    try (InputStream in = zip.getInputStream(lib)) {
+                        String digest = PluginArchive.digest(in);
+                        pluginsByDigest.computeIfAbsent(digest, k -> new HashSet<>()).add(archive.getShortName());
+                        jarsByDigest
+                                .computeIfAbsent(digest, k -> new HashSet<>())
+                                .add(candidate(archive.getShortName(), new File(lib.getName()).getName()));
+                    }
+                }
+            } catch (IOException x) {
+                LOG.log(Level.FINE, "Failed to hash the libraries of " + archive, x);
+            }
+        }
+        for (Map.Entry<String, Set<String>> e : pluginsByDigest.entrySet()) {
+            if (e.getValue().size() > 1) {
+                duplicates.add(e.getKey());
+                candidates.addAll(jarsByDigest.get(e.getKey()));
+            }
+        }
+        LOG.fine(duplicates.size() + " library jars are bundled by more than one plugin");
+    }
+
+    /**
+     * @param jar a library jar bundled by {@code plugin}
+     * @return the shared classloader serving this jar, or {@code null} if it
+     *         must stay in the plugin's classloader
+     */
+    SharedLibraryClassLoader loaderFor(File jar, String plugin) throws IOException {
+        if (duplicates.isEmpty() || !candidates.contains(candidate(plugin, jar.getName()))) {
+            return null; // nothing to gain
+        }
+        String digest = PluginArchive.digest(jar);
+        if (!duplicates.contains(digest)) {
+            return null;
+        }
+        Library lib = libraries.get(digest);
+        if (lib == null) {
+            Library analyzed = analyze(jar);
+            lib = libraries.putIfAbsent(digest, analyzed);
+            if (lib == null) {
+                lib = analyzed;
+            } else if (analyzed.loader != null) {
+                analyzed.loader.close(); // lost the race for this digest
+            }
+        }
+        if (lib.loader == null) {
+            return null;
+        }
+        lib.users.add(plugin);
+        return lib.loader;
+    }
+
+    private static String candidate(String plugin, String jarName) {
+        return plugin + ":" + jarName;
+    }
+
+    /**
+     * @return the classloaders of the shared jars, with the plugins bundling each
+     */
+    Map<SharedLibraryClassLoader, Set<String>> getSharedLibraries() {
+        Map<SharedLibraryClassLoader, Set<String>> r = new LinkedHashMap<>();
+        for (Library lib : libraries.values()) {
+            if (lib.loader != null) {
+                r.put(lib.loader, Collections.unmodifiableSet(lib.users));
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @return a classloader delegating to {@code parent} first, then to the shared libraries
+     */
+    ClassLoader withSharedLibraries(ClassLoader parent, List<SharedLibraryClassLoader> shared) {
+        return new SharedLibrariesParent(parent, shared);
+    }
+
+    /**
+     * Closes the shared classloaders, once the plugin classloaders using them are gone.
+     */
+    void close() throws IOException {
+        IOException failure = null;
+        for (Library lib : libraries.values()) {
+            if (lib.loader == null) {
+                continue;
+            }
+            try {
+                lib.loader.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+        libraries.clear();
+        duplicates.clear();
+        candidates.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private Library analyze(File jar) throws IOException {
+        Map<String, Integer> classSizes = new HashMap<>();
+        Set<String> references = new HashSet<>();
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry e = entries.nextElement();
+                String name = e.getName();
+                if (e.isDirectory()) {
+                    continue;
+                }
+                if (name.startsWith("META-INF/services/") || name.startsWith("META-INF/annotations/")) {
+                    LOG.fine(jar + " declares services or extensions, not sharing it");
+                    return new Library(null);
+                }
+                if (ClassFileInfo.isClassFile(name)) {
+                    try (InputStream in = zip.getInputStream(e)) {
+                        ClassFileInfo info = ClassFileInfo.read(in, false, true);
+                        classSizes.put(info.name, (int) Math.max(0, e.getSize()));
+                        references.addAll(info.referencedClasses);
+                    }
+                }
+            }
+        }
+        for (String ref : references) {
+            if (!classSizes.containsKey(ref) && coreClassLoader.getResource(ref.replace('.', '/') + ".class") == null) {
+                LOG.fine(jar + " refers to " + ref + ", which is neither in it nor in core, not sharing it");
+                return new Library(null);
+            }
+        }
+        LOG.fine("Sharing " + jar);
+        return new Library(new SharedLibraryClassLoader(jar, coreClassLoader, classSizes));
+    }
+
+    /**
+     * @return number of jars served from a shared classloader
+     */
+    public int getSharedJarCount() {
+        int count = 0;
+        for (Library lib : libraries.values()) {
+            if (lib.loader != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of shared jars bundled by more than one plugin
+     */
+    public int getDeduplicatedJarCount() {
+        int count = 0;
+        for (Library lib : libraries.values()) {
+            if (lib.loader != null && lib.users.size() > 1) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of class definitions avoided, assuming each plugin bundling
+     *         a shared jar would have defined the classes that got defined from it
+     */
+    public long getDeduplicatedClassCount() {
+        long count = 0;
+        for (Library lib : libraries.values()) {
+            if (lib.loader != null) {
+                count += (long) lib.loader.definedClasses.get() * (lib.users.size() - 1);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return estimate of the metaspace saved, in bytes, using the size of the
+     *         class files whose definition was avoided as a proxy
+     * @see #getDeduplicatedClassCount()
+     */
+    public long getEstimatedMetaspaceSaved() {
+        long bytes = 0;
+        for (Library lib : libraries.values()) {
+            if (lib.loader != null) {
+                bytes += lib.loader.definedBytes.get() * (lib.users.size() - 1);
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return getDeduplicatedJarCount() + " jars deduplicated, " + getDeduplicatedClassCount()
+                + " class definitions avoided, about " + getEstimatedMetaspaceSaved() / 1024
+                + " KiB of metaspace saved";
+    }
+
+    private static final class Library {
+        /** {@code null} if the jar cannot be shared. */
+        final SharedLibraryClassLoader loader;
+
+        final Set<String> users = ConcurrentHashMap.newKeySet();
+
+        Library(SharedLibraryClassLoader loader) {
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * Defines the classes of one shared jar, on top of core.
+     */
+    static final class SharedLibraryClassLoader extends URLClassLoader {
+        static {
+            registerAsParallelCapable();
+        }
+
+        private final Map<String, Integer> classSizes;
+        private final AtomicInteger definedClasses = new AtomicInteger();
+        private final AtomicLong definedBytes = new AtomicLong();
+
+        SharedLibraryClassLoader(File jar, ClassLoader parent, Map<String, Integer> classSizes) throws IOException {
+            super(new URL[] {jar.toURI().toURL()}, parent);
+            this.classSizes = classSizes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            Class<?> c = super.findClass(name);
+            definedClasses.incrementAndGet();
+            definedBytes.addAndGet(classSizes.getOrDefault(name, 0));
+            return c;
+        }
+    }
+
+    /**
+     * Parent of a plugin classloader: the plugin's dependencies first, as before,
+     * then the shared jars it bundles.
+     */
+    private static final class SharedLibrariesParent extends ClassLoader {
+        private final List<SharedLibraryClassLoader> shared;
+
+        SharedLibrariesParent(ClassLoader parent, List<SharedLibraryClassLoader> shared) {
+            super(parent);
+            this.shared = shared;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            for (SharedLibraryClassLoader l : shared) {
+                try {
+                    return l.loadClass(name);
+                } catch (ClassNotFoundException e) {
+                    // not found. try next
+                }
+            }
+            throw new ClassNotFoundException(name);
+        }
+
+        @Override
+        protected URL findResource(String name) {
+            for (SharedLibraryClassLoader l : shared) {
+                URL url = l.findResource(name);
+                if (url != null) return url;
+            }
+            return null;
+        }
+
+        @Override
+        protected Enumeration<URL> findResources(String name) throws IOException {
+            List<URL> resources = new ArrayList<>();
+            for (SharedLibraryClassLoader l : shared) {
+                resources.addAll(Collections.list(l.findResources(name)));
+            }
+            return Collections.enumeration(resources);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.jenkinsci.infra.tools;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The parts of a class file needed to reason about a type without defining it:
+ * its name, super class, interfaces and, optionally, the types of its members
+ * and the classes it refers to.
+ *
+ * All names are binary names (e.g. {@code hudson.model.Descriptor}).
+ */
+final class ClassFileInfo {
+    private static final int MAGIC = 0xCAFEBABE;
+
+    final String name;
+
+    /** {@code null} for {@link Object} and for module descriptors. */
+    final String superName;
+
+    final List<String> interfaces;
+
+    /**
+     * Member name to the binary name of its type, for fields and no-arg methods
+     * whose type is a class. Empty unless requested when reading.
+     */
+    final Map<String, String> memberTypes;
+
+    /**
+     * Classes the bytecode refers to, through class constants or member and
+     * method type descriptors. Empty unless requested when reading.
+     */
+    final Set<String> referencedClasses;
+
+    private ClassFileInfo(
+            String name,
+            String superName,
+            List<String> interfaces,
+            Map<String, String> memberTypes,
+            Set<String> referencedClasses) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.memberTypes = memberTypes;
+        this.referencedClasses = referencedClasses;
+    }
+
+    /**
+     * Reads a class file. The stream is left open.
+     *
+     * @param members whether to also record the types of fields and no-arg methods
+     */
+    static ClassFileInfo read(InputStream in, boolean members) throws IOException {
+        return read(in, members, false);
+    }
+
+    /**
+     * Reads a class file. The stream is left open.
+     *
+     * @param members whether to also record the types of fields and no-arg methods
+     * @param references whether to also record the referenced classes
+     */
+    static ClassFileInfo read(InputStream in, boolean members, boolean references) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        data.readUnsignedShort(); // minor_version
+        data.readUnsignedShort(); // major_version
+
+        int count = data.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classes = new int[count];
+        List<Integer> descriptors = new ArrayList<>();
+        for (int i = 1; i < count; i++) {
+            int tag = data.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8[i] = data.readUTF();
+                    break;
+                case 7: // Class
+                    classes[i] = data.readUnsignedShort();
+                    break;
+                case 16: // MethodType
+                    descriptors.add(data.readUnsignedShort());
+                    break;
+                case 12: // NameAndType
+                    data.readUnsignedShort(); // name_index
+                    descriptors.add(data.readUnsignedShort());
+                    break;
+                case 8: // String
+                case 19: // Module
+                case 20: // Package
+                    skipFully(data, 2);
+                    break;
+                case 15: // MethodHandle
+                    skipFully(data, 3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    skipFully(data, 4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    skipFully(data, 8);
+                    i++; // takes two slots
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        data.readUnsignedShort(); // access_flags
+        String name = className(utf8, classes, data.readUnsignedShort());
+        String superName = className(utf8, classes, data.readUnsignedShort());
+        int interfaceCount = data.readUnsignedShort();
+        List<String> interfaces = new ArrayList<>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(className(utf8, classes, data.readUnsignedShort()));
+        }
+        if (!members && !references) {
+            return new ClassFileInfo(name, superName, interfaces, Collections.emptyMap(), Collections.emptySet());
+        }
+
+        Map<String, String> memberTypes = new HashMap<>();
+        int fieldCount = data.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            data.readUnsignedShort(); // access_flags
+            String fieldName = utf8[data.readUnsignedShort()];
+            int descriptor = data.readUnsignedShort();
+            descriptors.add(descriptor);
+            String type = typeOf(utf8[descriptor]);
+            if (type != null) {
+                memberTypes.put(fieldName, type);
+            }
+            skipAttributes(data);
+        }
+        int methodCount = data.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            data.readUnsignedShort(); // access_flags
+            String methodName = utf8[data.readUnsignedShort()];
+            int descriptorIndex = data.readUnsignedShort();
+            descriptors.add(descriptorIndex);
+            String descriptor = utf8[descriptorIndex];
+            if (descriptor.startsWith("()")) {
+                String type = typeOf(descriptor.substring(2));
+                if (type != null) {
+                    memberTypes.put(methodName, type);
+                }
+            }
+            skipAttributes(data);
+        }
+        if (!members) {
+            memberTypes = Collections.emptyMap();
+        }
+
+        Set<String> referencedClasses = Collections.emptySet();
+        if (references) {
+            referencedClasses = new HashSet<>();
+            for (int i = 1; i < count; i++) {
+                if (classes[i] != 0) {
+                    String c = utf8[classes[i]];
+                    if (c.startsWith("[")) {
+                        addClassesOf(c, referencedClasses);
+                    } else {
+                        referencedClasses.add(c.replace('/', '.'));
+                    }
+                }
+            }
+            for (int descriptor : descriptors) {
+                if (descriptor < count && utf8[descriptor] != null) {
+                    addClassesOf(utf8[descriptor], referencedClasses);
+                }
+            }
+        }
+        return new ClassFileInfo(name, superName, interfaces, memberTypes, referencedClasses);
+    }
+
+    /**
+     * @param path path of a class path entry
+     * @return whether it is a class file, excluding module descriptors and multi-release variants
+     */
+    static boolean isClassFile(String path) {
+        return path.endsWith(".class") && !path.startsWith("META-INF/") && !path.endsWith("module-info.class");
+    }
+
+    /**
+     * Adds the binary names of the classes a field or method descriptor refers to.
+     */
+    private static void addClassesOf(String descriptor, Set<String> classes) {
+        int i = 0;
+        while (i < descriptor.length()) {
+            if (descriptor.charAt(i) == 'L') {
+                int end = descriptor.indexOf(';', i);
+                if (end < 0) {
+                    return;
+                }
+                classes.add(descriptor.substring(i + 1, end).replace('/', '.'));
+                i = end + 1;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static String className(String[] utf8, int[] classes, int index) throws IOException {
+        if (index == 0) {
+            return null;
+        }
+        if (index >= classes.length || classes[index] == 0) {
+            throw new IOException("Bad class reference " + index);
+        }
+        return utf8[classes[index]].replace('/', '.');
+    }
+
+    /**
+     * @return the binary name of the class a field descriptor refers to, or
+     *         {@code null} for primitives and arrays
+     */
+    private static String typeOf(String descriptor) {
+        if (descriptor.length() > 2 && descriptor.charAt(0) == 'L' && descriptor.endsWith(";")) {
+            return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+        }
+        return null;
+    }
+
+    private static void skipAttributes(DataInputStream data) throws IOException {
+        int attributeCount = data.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            data.readUnsignedShort(); // attribute_name_index
+            skipFully(data, data.readInt());
+        }
+    }
+
+    private static void skipFully(DataInputStream data, int n) throws IOException {
+        while (n > 0) {
+            int skipped = data.skipBytes(n);
+            if (skipped <= 0) {
+                data.readByte(); // throws EOFException at the end of the stream
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.jenkinsci.infra.tools;
+
+import hudson.PluginWrapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The classes resolved from the plugins during a run, with the plugin defining
+ * each one, in the order they were first needed.
+ *
+ * For a given plugin set, that order hardly changes from one run to the next.
+ * A trace recorded with {@link HyperLocalPluginManager#recordClassLookups()}
+ * can therefore be {@linkplain #preload preloaded} by the next run, loading the
+ * classes in parallel across the plugin classloaders instead of one lookup at
+ * a time. Entries whose plugin or class no longer exists, or whose class is no
+ * longer defined by that plugin, are skipped.
+ *
+ * The file format is one {@code <plugin short name> TAB <class name>} line per class.
+ */
+public final class ClassLookupTrace {
+    private static final Logger LOG = Logger.getLogger(ClassLookupTrace.class.getName());
+
+    /** Classes loaded in a row by one preloading task. */
+    private static final int BATCH_SIZE = 64;
+
+    /** Class name to plugin short name. */
+    private final Map<String, String> plugins = new LinkedHashMap<>();
+
+    ClassLookupTrace() {}
+
+    synchronized void record(String plugin, String className) {
+        plugins.putIfAbsent(className, plugin);
+    }
+
+    /**
+     * @return number of classes in the trace
+     */
+    public synchronized int size() {
+        return plugins.size();
+    }
+
+    public static ClassLookupTrace read(File file) throws IOException {
+        ClassLookupTrace trace = new ClassLookupTrace();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            if (tab > 0 && tab < line.length() - 1) {
+                trace.record(line.substring(0, tab), line.substring(tab + 1));
+            }
+        }
+        return trace;
+    }
+
+    public synchronized void write(File file) throws IOException {
+        List<String> lines = new ArrayList<>(plugins.size());
+        for (Map.Entry<String, String> e : plugins.entrySet()) {
+            lines.add(e.getValue() + "\t" + e.getKey());
+        }
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Loads the classes of the trace from the plugins of an initialized plugin
+     * manager, without initializing them, and lets its
+     * {@link HyperLocalPluginManager.UberPlusClassLoader} know about them.
+     * Meant to be called before looking up any component.
+     */
+    public Preload preload(HyperLocalPluginManager pm) {
+        long start = System.nanoTime();
+        Map<String, List<String>> classesByPlugin = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Map.Entry<String, String> e : plugins.entrySet()) {
+                classesByPlugin.computeIfAbsent(e.getValue(), k -> new ArrayList<>()).add(e.getKey());
+            }
+        }
+
+        int stale = 0;
+        List<Callable<int[]>> batches = new ArrayList<>();
+        for (Map.Entry<String, List<String>> e : classesByPlugin.entrySet()) {
+            // sequentially, as this activates the plugin in lazy mode
+            PluginWrapper p = pm.getPlugin(e.getKey());
+            if (p == null || !p.isActive()) {
+                stale += e.getValue().size();
+                continue;
+            }
+            List<String> classes = e.getValue();
+            for (int i = 0; i < classes.size(); i += BATCH_SIZE) {
+                List<String> batch = classes.subList(i, Math.min(i + BATCH_SIZE, classes.size()));
+                batches.add(() -> load(pm, p, batch));
+            }
+        }
+
+        int loaded = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (Future<int[]> counts : executor.invokeAll(batches)) {
+                loaded += counts.get()[0];
+                stale += counts.get()[1];
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while preloading classes", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to preload classes", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        Preload r = new Preload(loaded, stale, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOG.fine("Preloaded classes: " + r);
+        return r;
+    }
+
+    /**
+     * @return the number of classes loaded and the number of stale entries
+     */
+    private static int[] load(HyperLocalPluginManager pm, PluginWrapper p, List<String> classes) {
+        int loaded = 0;
+        int stale = 0;
+        for (String name : classes) {
+            try {
+                Class<?> c = Class.forName(name, false, p.classLoader);
+                if (c.getClassLoader() != p.classLoader) {
+                    // moved to a dependency, which must not be taken for its plugin
+                    LOG.finer("Skipping stale entry " + p.getShortName() + " " + name + ": defined elsewhere");
+                    stale++;
+                    continue;
+                }
+                pm.uberPlusClassLoader.preloaded(c, p.getShortName());
+                loaded++;
+            } catch (ClassNotFoundException | LinkageError e) {
+                LOG.finer("Skipping stale entry " + p.getShortName() + " " + name + ": " + e);
+                stale++;
+            }
+        }
+        return new int[] {loaded, stale};
+    }
+
+    /**
+     * What preloading a trace did.
+     */
+    public static final class Preload {
+        private final int loadedClassCount;
+        private final int staleEntryCount;
+        private final long elapsedMillis;
+
+        Preload(int loadedClassCount, int staleEntryCount, long elapsedMillis) {
+            this.loadedClassCount = loadedClassCount;
+            this.staleEntryCount = staleEntryCount;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getLoadedClassCount() {
+            return loadedClassCount;
+        }
+
+        /**
+         * @return number of entries whose plugin or class could not be found
+         */
+        public int getStaleEntryCount() {
+            return staleEntryCount;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return loadedClassCount + " classes loaded, " + staleEntryCount + " stale entries skipped, in "
+                    + elapsedMillis + " ms";
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.jenkinsci.infra.tools;
+
+import hudson.model.Descriptor;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.structs.describable.ArrayType;
+import org.jenkinsci.plugins.structs.describable.DescribableModel;
+import org.jenkinsci.plugins.structs.describable.DescribableParameter;
+import org.jenkinsci.plugins.structs.describable.HeterogeneousObjectType;
+import org.jenkinsci.plugins.structs.describable.HomogeneousObjectType;
+import org.jenkinsci.plugins.structs.describable.ParameterType;
+
+/**
+ * Builds the {@link DescribableModel}s of many {@link Descriptor}s at once, in
+ * parallel, along with the models of the types nested in their parameters.
+ *
+ * Every class is introspected once per introspector, however many descriptors
+ * refer to it, and recursive types simply refer back to themselves. The result
+ * is a {@link TypeGraph} in which each type appears once.
+ */
+public class DescribableIntrospector {
+    private static final Logger LOG = Logger.getLogger(DescribableIntrospector.class.getName());
+
+    private final HyperLocalPluginManager pluginManager;
+
+    /** Shared by all introspections. */
+    private final ConcurrentMap<Class<?>, TypeNode> nodes = new ConcurrentHashMap<>();
+
+    public DescribableIntrospector(HyperLocalPluginManager pluginManager) {
+        this.pluginManager = pluginManager;
+    }
+
+    /**
+     * Introspects every descriptor found by the plugin manager, steps included.
+     */
+    public TypeGraph introspect() {
+        return introspect(pluginManager.getPluginStrategy().findComponents(Descriptor.class));
+    }
+
+    /**
+     * @param descriptors descriptors whose {@link Descriptor#clazz} to introspect
+     * @return the graph of the types reachable from those classes
+     */
+    @SuppressWarnings("rawtypes") // as returned by findComponents(Descriptor.class)
+    public synchronized TypeGraph introspect(Collection<? extends Descriptor> descriptors) {
+        SortedSet<String> roots = new TreeSet<>();
+        Map<Class<?>, DescribableModel<?>> wave = new LinkedHashMap<>();
+        for (Descriptor<?> d : descriptors) {
+            roots.add(d.clazz.getName());
+            wave.put(d.clazz, null);
+        }
+        // breadth first: each wave introspects in parallel the types first seen in the previous one
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            while (!wave.isEmpty()) {
+                List<Callable<Map<Class<?>, DescribableModel<?>>>> visits = new ArrayList<>();
+                for (Map.Entry<Class<?>, DescribableModel<?>> e : wave.entrySet()) {
+                    TypeNode node = new TypeNode(e.getKey().getName());
+                    if (nodes.putIfAbsent(e.getKey(), node) == null) {
+                        visits.add(() -> visit(node, e.getKey(), e.getValue()));
+                    }
+                }
+                wave = new LinkedHashMap<>();
+                for (Future<Map<Class<?>, DescribableModel<?>>> nested : executor.invokeAll(visits)) {
+                    for (Map.Entry<Class<?>, DescribableModel<?>> e : nested.get().entrySet()) {
+                        wave.putIfAbsent(e.getKey(), e.getValue());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while introspecting", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to introspect", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<String, TypeNode> byName = new HashMap<>();
+        for (TypeNode node : nodes.values()) {
+            byName.put(node.className, node);
+        }
+        SortedMap<String, TypeNode> reachable = new TreeMap<>();
+        Deque<String> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            TypeNode node = byName.get(queue.pop());
+            if (node != null && reachable.put(node.className, node) == null) {
+                queue.addAll(node.references);
+            }
+        }
+        return new TypeGraph(roots, reachable);
+    }
+
+    /**
+     * Introspects one class.
+     *
+     * @param model already built by structs while resolving a parameter type, if known
+     * @return the types nested in its parameters
+     */
+    private static Map<Class<?>, DescribableModel<?>> visit(TypeNode node, Class<?> type, DescribableModel<?> model) {
+        Map<Class<?>, DescribableModel<?>> nested = new LinkedHashMap<>();
+        try {
+            DescribableModel<?> m = model != null ? model : DescribableModel.of(type);
+            for (DescribableParameter p : m.getParameters()) {
+                collect(p.getType(), nested);
+            }
+            for (Class<?> c : nested.keySet()) {
+                node.references.add(c.getName());
+            }
+            node.model = m;
+        } catch (RuntimeException | LinkageError e) {
+            LOG.log(Level.FINE, "Cannot describe " + type.getName(), e);
+            node.error = e.toString();
+        }
+        return nested;
+    }
+
+    /**
+     * Adds the nested types a parameter type refers to.
+     */
+    private static void collect(ParameterType type, Map<Class<?>, DescribableModel<?>> nested) {
+        if (type instanceof ArrayType) {
+            collect(((ArrayType) type).getElementType(), nested);
+        } else if (type instanceof HomogeneousObjectType) {
+            DescribableModel<?> model = ((HomogeneousObjectType) type).getSchemaType();
+            nested.putIfAbsent(model.getType(), model);
+        } else if (type instanceof HeterogeneousObjectType) {
+            for (DescribableModel<?> model : ((HeterogeneousObjectType) type).getTypes().values()) {
+                nested.putIfAbsent(model.getType(), model);
+            }
+        }
+    }
+
+    /**
+     * The types reachable from some descriptors, each appearing once.
+     */
+    public static final class TypeGraph {
+        private final SortedSet<String> roots;
+        private final SortedMap<String, TypeNode> nodes;
+
+        TypeGraph(SortedSet<String> roots, SortedMap<String, TypeNode> nodes) {
+            this.roots = Collections.unmodifiableSortedSet(roots);
+            this.nodes = Collections.unmodifiableSortedMap(nodes);
+        }
+
+        /**
+         * @return names of the classes of the introspected descriptors
+         */
+        public SortedSet<String> getRoots() {
+            return roots;
+        }
+
+        /**
+         * @return all reachable types, by class name
+         */
+        public SortedMap<String, TypeNode> getNodes() {
+            return nodes;
+        }
+
+        /**
+         * @return {@code null} if the type is not in the graph
+         */
+        public TypeNode getNode(String className) {
+            return nodes.get(className);
+        }
+
+        /**
+         * @return the model of a type, or {@code null} if it is not in the graph
+         *         or could not be described
+         */
+        public DescribableModel<?> getModel(String className) {
+            TypeNode node = nodes.get(className);
+            return node != null ? node.getModel() : null;
+        }
+    }
+
+    /**
+     * One type of a {@link TypeGraph}.
+     */
+    public static final class TypeNode {
+        private final String className;
+        private final SortedSet<String> references = new TreeSet<>();
+        private DescribableModel<?> model;
+        private String error;
+
+        TypeNode(String className) {
+            this.className = className;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return {@code null} if the type could not be described, see {@link #getError()}
+         */
+        public DescribableModel<?> getModel() {
+            return model;
+        }
+
+        /**
+         * @return why the type could not be described, or {@code null}
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * @return names of the describable types nested in the parameters of this
+         *         one, including through arrays, collections and abstract types
+         */
+        public SortedSet<String> getReferences() {
+            return Collections.unmodifiableSortedSet(references);
+        }
+    }
+}
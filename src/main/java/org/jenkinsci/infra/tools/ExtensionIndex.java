@@ -0,0 +1,167 @@
+package org.jenkinsci.infra.tools;
+
+import hudson.Extension;
+import hudson.PluginWrapper;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.ClassLoaderReflectionToolkit;
+import net.java.sezpoz.Index;
+import net.java.sezpoz.IndexItem;
+
+/**
+ * The Sezpoz index of {@link Extension}s, kept partitioned by plugin.
+ *
+ * Each plugin's partition is read from that plugin's own index files only,
+ * rather than from those of all plugins at once through the
+ * {@link HyperLocalPluginManager.UberPlusClassLoader}, and partitions missing
+ * from a query are read in parallel. Knowing where each item comes from gives
+ * the plugin of every extension without loading its class.
+ */
+final class ExtensionIndex {
+    private static final Logger LOG = Logger.getLogger(ExtensionIndex.class.getName());
+
+    static final String INDEX = "META-INF/annotations/" + Extension.class.getName();
+
+    /** Name of the partition of what is visible from core, Jenkins itself included. */
+    static final String CORE = "core";
+
+    private final ClassLoader coreClassLoader;
+    private final Map<String, List<IndexItem<Extension, Object>>> partitions = new ConcurrentHashMap<>();
+    private final Map<String, String> pluginByClass = new ConcurrentHashMap<>();
+
+    /** Where to record the extension classes loaded, if anywhere. */
+    volatile ClassLookupTrace trace;
+
+    ExtensionIndex(ClassLoader coreClassLoader) {
+        this.coreClassLoader = coreClassLoader;
+    }
+
+    /**
+     * @param plugins plugins whose extensions to include, in that order
+     * @param core whether to start with the extensions visible from core
+     */
+    synchronized List<IndexItem<Extension, Object>> items(List<PluginWrapper> plugins, boolean core) {
+        List<PluginWrapper> ordered = new ArrayList<>(plugins); // may be the live list of active plugins
+        Map<String, Callable<List<IndexItem<Extension, Object>>>> missing = new LinkedHashMap<>();
+        if (core && !partitions.containsKey(CORE)) {
+            missing.put(CORE, () -> read(CORE, coreClassLoader));
+        }
+        for (PluginWrapper p : ordered) {
+            if (!partitions.containsKey(p.getShortName())) {
+                missing.put(
+                        p.getShortName(),
+                        () -> read(p.getShortName(), new OwnResourcesClassLoader(p.getShortName(), p.classLoader)));
+            }
+        }
+        if (!missing.isEmpty()) {
+            load(missing);
+        }
+
+        List<IndexItem<Extension, Object>> r = new ArrayList<>();
+        if (core) {
+            r.addAll(partitions.get(CORE));
+        }
+        for (PluginWrapper p : ordered) {
+            r.addAll(partitions.get(p.getShortName()));
+        }
+        return r;
+    }
+
+    private void load(Map<String, Callable<List<IndexItem<Extension, Object>>>> missing) {
+        List<String> names = new ArrayList<>(missing.keySet());
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(missing.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<List<IndexItem<Extension, Object>>>> results = executor.invokeAll(missing.values());
+            // in order, so that a class listed by several plugins goes to the first one
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i);
+                List<IndexItem<Extension, Object>> items = results.get(i).get();
+                partitions.put(name, items);
+                if (!name.equals(CORE)) {
+                    for (IndexItem<Extension, Object> item : items) {
+                        pluginByClass.putIfAbsent(item.className(), name);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading extension indices", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to read extension indices", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<IndexItem<Extension, Object>> read(String name, ClassLoader loader) {
+        List<IndexItem<Extension, Object>> items = new ArrayList<>();
+        try {
+            for (IndexItem<Extension, Object> item : Index.load(Extension.class, Object.class, loader)) {
+                items.add(item);
+            }
+        } catch (RuntimeException | LinkageError e) {
+            LOG.log(Level.WARNING, "Failed to read the extension index of " + name, e);
+        }
+        return items;
+    }
+
+    /**
+     * @param className binary name of a class
+     * @return the plugin whose index lists the class as an extension, or one of
+     *         its members, or {@code null} if no partition read so far does
+     */
+    String getPlugin(String className) {
+        return pluginByClass.get(className);
+    }
+
+    void clear() {
+        partitions.clear();
+        pluginByClass.clear();
+    }
+
+    /**
+     * Loads classes from a plugin, but only finds the resources of the plugin
+     * itself, not those of its dependencies or core. Records the classes it
+     * loads when tracing, as long as the plugin defines them rather than one of
+     * its dependencies or core.
+     */
+    private final class OwnResourcesClassLoader extends ClassLoader {
+        private final String shortName;
+        private final ClassLoader plugin;
+
+        OwnResourcesClassLoader(String shortName, ClassLoader plugin) {
+            super(plugin);
+            this.shortName = shortName;
+            this.plugin = plugin;
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException {
+            return ClassLoaderReflectionToolkit._findResources(plugin, name);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            Class<?> c = super.loadClass(name, resolve);
+            ClassLookupTrace t = trace;
+            if (t != null && c.getClassLoader() == plugin) {
+                t.record(shortName, name);
+            }
+            return c;
+        }
+    }
+}
@@ -17,6 +17,7 @@ import hudson.init.InitStrategy;
 import hudson.model.Descriptor;
 import hudson.model.Hudson;
 import hudson.util.CyclicGraphDetector;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -25,17 +26,23 @@ import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.Attributes;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.ClassLoaderReflectionToolkit;
@@ -43,6 +50,8 @@ import jenkins.ExtensionComponentSet;
 import jenkins.ExtensionFilter;
 import net.java.sezpoz.Index;
 import net.java.sezpoz.IndexItem;
+import org.apache.commons.logging.LogFactory;
+import org.jenkinsci.infra.tools.StaticExtensionScanner.StaticExtension;
 import org.jvnet.hudson.reactor.Executable;
 import org.jvnet.hudson.reactor.Reactor;
 import org.jvnet.hudson.reactor.TaskBuilder;
@@ -56,21 +65,56 @@ import org.jvnet.hudson.reactor.TaskGraphBuilder;
  *
  * Since this PluginManager operates on such a local scale, many classes
  * associated with it are also changed to not use calls to Jenkins.
+ *
+ * Closing it releases the plugin classloaders, so that several plugin sets can
+ * be processed one after the other in the same JVM.
  */
-public class HyperLocalPluginManager extends LocalPluginManager {
+public class HyperLocalPluginManager extends LocalPluginManager implements Closeable {
     private static final Logger LOG = Logger.getLogger(HyperLocalPluginManager.class.getName());
     private final ModClassicPluginStrategy strategy;
     public final UberPlusClassLoader uberPlusClassLoader = new UberPlusClassLoader();
     private final boolean checkCycles;
+    private final boolean lazy;
+
+    /** Plugins inspected in lazy mode, in inspection order. */
+    private final List<LazyPlugin> lazyPlugins = new CopyOnWriteArrayList<>();
+
+    private final Map<String, LazyPlugin> lazyPluginsByName = new ConcurrentHashMap<>();
+
+    /** Extensions of the inspected plugins, read from the archives when first needed in lazy mode. */
+    private StaticExtensionScanner staticExtensions;
+
+    /** Extensions of core and of the plugins, by plugin. */
+    final ExtensionIndex extensionIndex = new ExtensionIndex(PluginManager.class.getClassLoader());
+
+    /** {@code null} unless recording. */
+    private volatile ClassLookupTrace classLookupTrace;
+
+    /** Run in reverse order of registration when closing. */
+    private final Deque<Closeable> onClose = new ArrayDeque<>();
 
     public HyperLocalPluginManager(boolean cycles) {
         this(".", cycles);
     }
 
     public HyperLocalPluginManager(String rootDir, boolean cycles) {
+        this(rootDir, cycles, false);
+    }
+
+    /**
+     * @param lazy if true, only the metadata of the plugins is read while
+     *             inspecting them; a plugin gets its {@link PluginWrapper} and
+     *             classloader the first time one of its classes, resources or
+     *             extensions is needed, see {@link #getActivatedPluginCount()}.
+     *             {@link #getPlugins()} then only lists the activated plugins,
+     *             see {@link #getInspectedDependencies()} for all of them.
+     *             Cyclic dependencies are not checked in this mode.
+     */
+    public HyperLocalPluginManager(String rootDir, boolean cycles, boolean lazy) {
         super(new File(rootDir));
         this.strategy = createModPluginStrategy();
         checkCycles = cycles;
+        this.lazy = lazy;
     }
 
     @Override
@@ -107,6 +151,12 @@ public class HyperLocalPluginManager extends LocalPluginManager {
                         // initialization tasks
                         TaskGraphBuilder g = new TaskGraphBuilder();
 
+                        BundledLibraries libraries = strategy.getBundledLibraries();
+                        if (libraries != null) {
+                            // before any plugin classloader gets created
+                            libraries.findDuplicates(archives);
+                        }
+
                         final Map<String, File> inspectedShortNames = new HashMap<>();
 
                         for (final File arc : archives) {
@@ -116,8 +166,16 @@ public class HyperLocalPluginManager extends LocalPluginManager {
                                     .add("Inspecting plugin " + arc, new Executable() {
                                         public void run(Reactor session1) throws Exception {
                                             try {
+                                                if (lazy) {
+                                                    LazyPlugin lp = new LazyPlugin(PluginArchive.read(arc));
+                                                    if (isDuplicate(lp.archive.getShortName())) return;
+
+                                                    lazyPluginsByName.put(lp.archive.getShortName(), lp);
+                                                    lazyPlugins.add(lp);
+                                                    return;
+                                                }
                                                 PluginWrapper p = strategy.createPluginWrapper(arc);
-                                                if (isDuplicate(p)) return;
+                                                if (isDuplicate(p.getShortName())) return;
 
                                                 // p.isBundled = false; //flying blind here; luckily doesn't look used
                                                 plugins.add(p);
@@ -135,8 +193,7 @@ public class HyperLocalPluginManager extends LocalPluginManager {
                                          * as well as putting numbered jpi files, like "cobertura-1.0.jpi" and
                                          * "cobertura-1.1.jpi"
                                          */
-                                        private boolean isDuplicate(PluginWrapper p) {
-                                            String shortName = p.getShortName();
+                                        private boolean isDuplicate(String shortName) {
                                             if (inspectedShortNames.containsKey(shortName)) {
                                                 LOG.info("Ignoring " + arc + " because "
                                                         + inspectedShortNames.get(shortName) + " is already loaded");
@@ -149,7 +206,7 @@ public class HyperLocalPluginManager extends LocalPluginManager {
                                     });
                         }
 
-                        if (checkCycles) {
+                        if (checkCycles && !lazy) {
                             g.followedBy()
                                     .attains(PLUGINS_LISTED)
                                     .add("Checking cyclic dependencies", new Executable() {
@@ -220,6 +277,261 @@ public class HyperLocalPluginManager extends LocalPluginManager {
         };
     }
 
+    /**
+     * @param path class or resource path, e.g. {@code hudson/plugins/git/GitSCM.class}
+     * @return the active plugins that may provide {@code path}; in lazy mode,
+     *         those are activated as needed
+     */
+    private List<PluginWrapper> pluginsFor(String path) {
+        if (!lazy) {
+            return activePlugins;
+        }
+        String dir = PluginArchive.directoryOf(path);
+        List<PluginWrapper> r = new ArrayList<>();
+        for (LazyPlugin lp : lazyPlugins) {
+            if (lp.directories.contains(dir)) {
+                PluginWrapper p = activate(lp);
+                if (p != null && p.isActive()) r.add(p);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @return the active plugins that may have extensions of one of the types;
+     *         in lazy mode, only those are activated, as told by their Sezpoz
+     *         index and class files, with the plugins they depend on
+     */
+    private List<PluginWrapper> pluginsWithExtensionsOf(Collection<Class<?>> types) {
+        if (!lazy) {
+            return activePlugins;
+        }
+        Set<String> names = new HashSet<>();
+        synchronized (lazyPlugins) {
+            if (staticExtensions == null) {
+                List<File> archives = new ArrayList<>();
+                for (LazyPlugin lp : lazyPlugins) {
+                    archives.add(lp.archive.getFile());
+                }
+                staticExtensions = new StaticExtensionScanner(PluginManager.class.getClassLoader());
+                staticExtensions.scan(archives);
+            }
+            for (StaticExtension e : staticExtensions.getExtensions()) {
+                // when the type of a member cannot be resolved, only loading it tells
+                Set<String> supertypes = e.getType() != null ? staticExtensions.getSupertypes(e.getType()) : null;
+                for (Class<?> type : types) {
+                    if (supertypes == null || supertypes.contains(type.getName())) {
+                        names.add(e.getPlugin());
+                        break;
+                    }
+                }
+            }
+        }
+        List<PluginWrapper> r = new ArrayList<>();
+        for (LazyPlugin lp : lazyPlugins) {
+            if (names.contains(lp.archive.getShortName())) {
+                PluginWrapper p = activate(lp);
+                if (p != null && p.isActive()) r.add(p);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Creates the {@link PluginWrapper}, and so the classloader, of a plugin
+     * inspected in lazy mode, after those of its dependencies.
+     *
+     * @return {@code null} if the plugin failed to load
+     */
+    private PluginWrapper activate(LazyPlugin lp) {
+        synchronized (lazyPlugins) {
+            if (lp.activationAttempted) {
+                return lp.wrapper; // null while in progress, i.e. on a dependency cycle
+            }
+            lp.activationAttempted = true;
+            for (String dep : lp.archive.getDependencies()) {
+                LazyPlugin d = lazyPluginsByName.get(dep);
+                if (d != null) activate(d);
+            }
+            try {
+                PluginWrapper p = strategy.createPluginWrapper(lp.archive.getFile());
+                plugins.add(p);
+                if (p.isActive()) activePlugins.add(p);
+                lp.wrapper = p;
+                LOG.fine("Activated plugin " + lp.archive.getShortName());
+            } catch (IOException e) {
+                failedPlugins.add(new FailedPlugin(lp.archive.getFile().getName(), e));
+                LOG.log(Level.WARNING, "Failed to activate " + lp.archive, e);
+            }
+            return lp.wrapper;
+        }
+    }
+
+    /**
+     * In lazy mode, also activates the plugin if it was inspected but not needed yet.
+     */
+    @Override
+    public PluginWrapper getPlugin(String shortName) {
+        PluginWrapper p = super.getPlugin(shortName);
+        if (p == null && lazy) {
+            LazyPlugin lp = lazyPluginsByName.get(shortName);
+            if (lp != null) p = activate(lp);
+        }
+        return p;
+    }
+
+    /**
+     * @return number of plugins whose classloader got created; in lazy mode, this
+     *         can be much lower than the number of inspected plugins
+     */
+    public int getActivatedPluginCount() {
+        if (!lazy) {
+            return plugins.size();
+        }
+        int count = 0;
+        for (LazyPlugin lp : lazyPlugins) {
+            if (lp.wrapper != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of plugins inspected, activated or not
+     */
+    public int getInspectedPluginCount() {
+        return lazy ? lazyPlugins.size() : plugins.size();
+    }
+
+    /**
+     * Unlike {@link #getPlugins()} in lazy mode, covers the plugins that were
+     * not activated, without activating them.
+     *
+     * @return short names of all inspected plugins, in inspection order, with
+     *         those of the plugins they depend on, optional ones included
+     */
+    public Map<String, List<String>> getInspectedDependencies() {
+        Map<String, List<String>> r = new LinkedHashMap<>();
+        if (lazy) {
+            for (LazyPlugin lp : lazyPlugins) {
+                r.put(lp.archive.getShortName(), lp.archive.getDependencies());
+            }
+            return r;
+        }
+        for (PluginWrapper p : plugins) {
+            List<String> deps = new ArrayList<>();
+            for (PluginWrapper.Dependency d : p.getDependencies()) {
+                deps.add(d.shortName);
+            }
+            for (PluginWrapper.Dependency d : p.getOptionalDependencies()) {
+                if (!deps.contains(d.shortName)) deps.add(d.shortName);
+            }
+            r.put(p.getShortName(), deps);
+        }
+        return r;
+    }
+
+    /**
+     * Starts recording the classes resolved from the plugins, whether by the
+     * {@link UberPlusClassLoader} or while reading the extension index, so that
+     * later runs on the same plugin set can {@linkplain ClassLookupTrace#preload
+     * preload} them.
+     *
+     * @return the trace, which keeps growing until this plugin manager is closed
+     */
+    public ClassLookupTrace recordClassLookups() {
+        ClassLookupTrace trace = new ClassLookupTrace();
+        classLookupTrace = trace;
+        extensionIndex.trace = trace;
+        return trace;
+    }
+
+    /**
+     * Records the plugin that defined a class, which may be a dependency of the
+     * plugin it was looked up from. Classes of core are not recorded.
+     */
+    private void recordClassLookup(Class<?> c) {
+        ClassLookupTrace trace = classLookupTrace;
+        if (trace == null) {
+            return;
+        }
+        for (PluginWrapper p : activePlugins) {
+            if (p.classLoader == c.getClassLoader()) {
+                trace.record(p.getShortName(), c.getName());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registers something to release when closing, after the plugin classloaders.
+     */
+    synchronized void onClose(Closeable resource) {
+        onClose.push(resource);
+    }
+
+    /**
+     * Releases what this plugin manager built: the plugin classloaders and the
+     * jars they keep open, the class lookup caches, and whatever got registered
+     * while initializing, such as the mocked Jenkins of
+     * {@link HyperLocalPluginManagerInit}. The plugin manager is empty afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        synchronized (lazyPlugins) {
+            for (PluginWrapper p : plugins) {
+                p.stop();
+                p.releaseClassLoader();
+            }
+            plugins.clear();
+            activePlugins.clear();
+            failedPlugins.clear();
+            lazyPlugins.clear();
+            lazyPluginsByName.clear();
+            staticExtensions = null;
+        }
+        classLookupTrace = null;
+        extensionIndex.trace = null;
+        uberPlusClassLoader.clear();
+        extensionIndex.clear();
+        LogFactory.release(uberPlusClassLoader);
+
+        IOException failure = null;
+        BundledLibraries libraries = strategy.getBundledLibraries();
+        if (libraries != null) {
+            try {
+                libraries.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        while (!onClose.isEmpty()) {
+            try {
+                onClose.pop().close();
+            } catch (IOException | RuntimeException e) {
+                if (failure == null) failure = new IOException("Failed to close " + this, e);
+                else failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * A plugin inspected in lazy mode.
+     */
+    private static final class LazyPlugin {
+        final PluginArchive archive;
+        final Set<String> directories;
+        boolean activationAttempted;
+        volatile PluginWrapper wrapper;
+
+        LazyPlugin(PluginArchive archive) throws IOException {
+            this.archive = archive;
+            this.directories = archive.readClassPathDirectories();
+        }
+    }
+
     /**
      * {@link ClassLoader} that can see all plugins.
      */
@@ -261,8 +573,9 @@ public class HyperLocalPluginManager extends LocalPluginManager {
                     }
                 }
             }
+            String path = name.replace('.', '/') + ".class";
             if (FAST_LOOKUP) {
-                for (PluginWrapper p : activePlugins) {
+                for (PluginWrapper p : pluginsFor(path)) {
                     try {
                         Class<?> c = ClassLoaderReflectionToolkit.loadClass(p.classLoader, name);
                         // calling findClass twice appears to cause LinkageError: duplicate class def
@@ -273,18 +586,37 @@ public class HyperLocalPluginManager extends LocalPluginManager {
                         synchronized (byPlugin) {
                             byPlugin.put(c.getName(), p.getShortName());
                         }
+                        recordClassLookup(c);
+                        return c;
+                    } catch (ClassNotFoundException e) {
+                        // not found. try next
+                    }
+                }
+                // shared library jars are not part of the plugin classloaders, only of their parents
+                for (Map.Entry<BundledLibraries.SharedLibraryClassLoader, Set<String>> l : sharedLibraries()) {
+                    String plugin = bundlingPlugin(l.getValue());
+                    if (plugin == null) continue;
+                    try {
+                        Class<?> c = l.getKey().loadClass(name);
+                        synchronized (loaded) {
+                            loaded.put(name, c);
+                        }
+                        synchronized (byPlugin) {
+                            byPlugin.put(c.getName(), plugin);
+                        }
                         return c;
                     } catch (ClassNotFoundException e) {
                         // not found. try next
                     }
                 }
             } else {
-                for (PluginWrapper p : activePlugins) {
+                for (PluginWrapper p : pluginsFor(path)) {
                     try {
                         Class<?> c = p.classLoader.loadClass(name);
                         synchronized (byPlugin) {
                             byPlugin.put(c.getName(), p.getShortName());
                         }
+                        recordClassLookup(c);
                         return c;
                     } catch (ClassNotFoundException e) {
                         // not found. try next
@@ -301,12 +633,16 @@ public class HyperLocalPluginManager extends LocalPluginManager {
         @Override
         protected URL findResource(String name) {
             if (FAST_LOOKUP) {
-                for (PluginWrapper p : activePlugins) {
+                for (PluginWrapper p : pluginsFor(name)) {
                     URL url = ClassLoaderReflectionToolkit._findResource(p.classLoader, name);
                     if (url != null) return url;
                 }
+                for (Map.Entry<BundledLibraries.SharedLibraryClassLoader, Set<String>> l : sharedLibraries()) {
+                    URL url = l.getKey().findResource(name);
+                    if (url != null) return url;
+                }
             } else {
-                for (PluginWrapper p : activePlugins) {
+                for (PluginWrapper p : pluginsFor(name)) {
                     URL url = p.classLoader.getResource(name);
                     if (url != null) return url;
                 }
@@ -318,12 +654,15 @@ public class HyperLocalPluginManager extends LocalPluginManager {
         protected Enumeration<URL> findResources(String name) throws IOException {
             List<URL> resources = new ArrayList<>();
             if (FAST_LOOKUP) {
-                for (PluginWrapper p : activePlugins) {
+                for (PluginWrapper p : pluginsFor(name)) {
                     resources.addAll(
                             Collections.list(ClassLoaderReflectionToolkit._findResources(p.classLoader, name)));
                 }
+                for (Map.Entry<BundledLibraries.SharedLibraryClassLoader, Set<String>> l : sharedLibraries()) {
+                    resources.addAll(Collections.list(l.getKey().findResources(name)));
+                }
             } else {
-                for (PluginWrapper p : activePlugins) {
+                for (PluginWrapper p : pluginsFor(name)) {
                     resources.addAll(Collections.list(p.classLoader.getResources(name)));
                 }
             }
@@ -334,6 +673,53 @@ public class HyperLocalPluginManager extends LocalPluginManager {
             return byPlugin;
         }
 
+        /**
+         * @return the jars shared between plugins, if enabled, with the plugins bundling each
+         */
+        private Set<Map.Entry<BundledLibraries.SharedLibraryClassLoader, Set<String>>> sharedLibraries() {
+            BundledLibraries libraries = strategy.getBundledLibraries();
+            return libraries != null
+                    ? libraries.getSharedLibraries().entrySet()
+                    : Collections.<Map.Entry<BundledLibraries.SharedLibraryClassLoader, Set<String>>>emptySet();
+        }
+
+        /**
+         * @return the first active plugin among those bundling a shared jar, i.e.
+         *         the one that would have served it without sharing
+         */
+        private String bundlingPlugin(Set<String> users) {
+            for (PluginWrapper p : activePlugins) {
+                if (users.contains(p.getShortName())) return p.getShortName();
+            }
+            return null;
+        }
+
+        /**
+         * Makes a class loaded ahead of time from a plugin known, unless it was
+         * looked up already.
+         */
+        void preloaded(Class<?> c, String plugin) {
+            synchronized (loaded) {
+                loaded.putIfAbsent(c.getName(), c);
+            }
+            synchronized (byPlugin) {
+                byPlugin.putIfAbsent(c.getName(), plugin);
+            }
+        }
+
+        /**
+         * Forgets every class looked up so far.
+         */
+        void clear() {
+            generatedClasses.clear();
+            synchronized (loaded) {
+                loaded.clear();
+            }
+            synchronized (byPlugin) {
+                byPlugin.clear();
+            }
+        }
+
         @Override
         public String toString() {
             // only for debugging purpose
@@ -345,58 +731,180 @@ public class HyperLocalPluginManager extends LocalPluginManager {
      * A PluginStrategy that supports custom classloaders (the UberPlusClassLoader).
      */
     public static class ModClassicPluginStrategy extends ClassicPluginStrategy {
+        private final HyperLocalPluginManager pluginManager;
         private final ClassLoader classLoader;
+        private volatile BundledLibraries bundledLibraries;
 
         public ModClassicPluginStrategy(HyperLocalPluginManager pluginManager) {
             super(pluginManager);
+            this.pluginManager = pluginManager;
             classLoader = pluginManager.uberPlusClassLoader;
         }
 
-        public <T> List<ExtensionComponent<T>> findComponents(Class<T> type, Hudson hudson) {
-            List<SmallSezpoz> finders = Collections.singletonList(new SmallSezpoz());
-            for (SmallSezpoz finder : finders) {
-                finder.scout(classLoader);
+        /**
+         * Opts in to serving the byte-identical libraries bundled by several
+         * plugins from shared classloaders. Must be called before the plugins
+         * get inspected.
+         *
+         * @return where to read how much got deduplicated
+         */
+        public synchronized BundledLibraries shareBundledLibraries() {
+            if (bundledLibraries == null) {
+                bundledLibraries = new BundledLibraries(PluginManager.class.getClassLoader());
             }
+            return bundledLibraries;
+        }
 
-            List<ExtensionComponent<T>> r = Lists.newArrayList();
-            for (SmallSezpoz finder : finders) {
-                try {
-                    r.addAll(finder.find(type, classLoader));
-                } catch (AbstractMethodError e) {
-                    // backward compatibility
-                    // nothing actually happens here...
+        /**
+         * @return {@code null} unless {@link #shareBundledLibraries()} was called
+         */
+        public BundledLibraries getBundledLibraries() {
+            return bundledLibraries;
+        }
+
+        /**
+         * When sharing bundled libraries, moves the shareable jars bundled by
+         * other plugins too out of the plugin classloader into a parent
+         * consulted after the plugin's dependencies.
+         * Plugins using their own class loading rules, through
+         * {@code PluginFirstClassLoader} or {@code Mask-Classes}, are left alone.
+         */
+        @Override
+        protected ClassLoader createClassLoader(String name, List<File> paths, ClassLoader parent, Attributes atts)
+                throws IOException {
+            BundledLibraries libraries = bundledLibraries;
+            if (libraries == null
+                    || atts == null
+                    || Boolean.parseBoolean(atts.getValue("PluginFirstClassLoader"))
+                    || atts.getValue("Mask-Classes") != null) {
+                return super.createClassLoader(name, paths, parent, atts);
+            }
+            String shortName = atts.getValue("Short-Name");
+            List<File> own = new ArrayList<>();
+            List<BundledLibraries.SharedLibraryClassLoader> shared = new ArrayList<>();
+            for (File path : paths) {
+                BundledLibraries.SharedLibraryClassLoader l = null;
+                if (path.isFile() && path.getName().endsWith(".jar") && !path.getName().equals(shortName + ".jar")) {
+                    l = libraries.loaderFor(path, shortName);
                 }
+                if (l != null) shared.add(l);
+                else own.add(path);
             }
-
-            List<ExtensionComponent<T>> filtered = Lists.newArrayList();
-            for (ExtensionComponent<T> e : r) {
-                if (ExtensionFilter.isAllowed(type, e)) filtered.add(e);
+            if (shared.isEmpty()) {
+                return super.createClassLoader(name, paths, parent, atts);
             }
-            return filtered;
+            return super.createClassLoader(name, own, libraries.withSharedLibraries(parent, shared), atts);
+        }
+
+        public <T> List<ExtensionComponent<T>> findComponents(Class<T> type, Hudson hudson) {
+            return find(type, allExtensions(Collections.<Class<?>>singleton(type)));
         }
 
         public <T> List<T> findComponents(Class<T> type) {
-            List<SmallSezpoz> finders = Collections.singletonList(new SmallSezpoz());
-            for (SmallSezpoz finder : finders) {
-                finder.scout(classLoader);
+            return instances(findComponents(type, (Hudson) null));
+        }
+
+        /**
+         * Like {@link #findComponents(Class)}, but only among the extensions
+         * declared by some plugins, not by their dependencies.
+         *
+         * @param plugins short names of the plugins, {@code core} for the
+         *                extensions of core
+         */
+        public <T> List<T> findComponents(Class<T> type, Collection<String> plugins) {
+            List<PluginWrapper> wrappers = new ArrayList<>();
+            for (String shortName : plugins) {
+                PluginWrapper p = shortName.equals(ExtensionIndex.CORE) ? null : pluginManager.getPlugin(shortName);
+                if (p != null && p.isActive()) wrappers.add(p);
             }
+            return instances(
+                    find(type, pluginManager.extensionIndex.items(wrappers, plugins.contains(ExtensionIndex.CORE))));
+        }
 
-            List<ExtensionComponent<T>> r = Lists.newArrayList();
-            for (SmallSezpoz finder : finders) {
-                try {
-                    r.addAll(finder.find(type, classLoader));
-                } catch (AbstractMethodError e) {
-                    // backward compatibility
-                    // nothing actually happens here...
+        /**
+         * Finds the components of several types with one scan of the index,
+         * e.g. to fill many extension lists at once. An extension matching
+         * several of the types is instantiated once and shared.
+         */
+        public ComponentsByType findComponents(Set<Class<?>> types) {
+            return find(types, allExtensions(types));
+        }
+
+        /**
+         * @return the extensions of core and all plugins, activating in lazy mode
+         *         only the plugins that may have some of the requested types
+         */
+        private List<IndexItem<Extension, Object>> allExtensions(Collection<Class<?>> types) {
+            return pluginManager.extensionIndex.items(pluginManager.pluginsWithExtensionsOf(types), true);
+        }
+
+        private <T> List<ExtensionComponent<T>> find(Class<T> type, List<IndexItem<Extension, Object>> items) {
+            return find(Collections.<Class<?>>singleton(type), items).getComponents(type);
+        }
+
+        private ComponentsByType find(Collection<Class<?>> types, List<IndexItem<Extension, Object>> items) {
+            SmallSezpoz finder = new SmallSezpoz(items);
+            finder.scout(classLoader);
+
+            Map<Class<?>, List<ExtensionComponent<?>>> filtered = new LinkedHashMap<>();
+            for (Map.Entry<Class<?>, List<ExtensionComponent<?>>> e : finder.find(types, classLoader).entrySet()) {
+                List<ExtensionComponent<?>> allowed = new ArrayList<>();
+                for (ExtensionComponent<?> c : e.getValue()) {
+                    if (isAllowed(e.getKey(), c)) allowed.add(c);
                 }
+                filtered.put(e.getKey(), allowed);
             }
+            return new ComponentsByType(filtered);
+        }
 
-            List<T> filtered = Lists.newArrayList();
-            for (ExtensionComponent<T> e : r) {
-                if (ExtensionFilter.isAllowed(type, e)) filtered.add(e.getInstance());
+        @SuppressWarnings("unchecked")
+        private static <T> boolean isAllowed(Class<T> type, ExtensionComponent<?> component) {
+            return ExtensionFilter.isAllowed(type, (ExtensionComponent<T>) component);
+        }
+
+        private static <T> List<T> instances(List<ExtensionComponent<T>> components) {
+            List<T> r = Lists.newArrayList();
+            for (ExtensionComponent<T> e : components) {
+                r.add(e.getInstance());
             }
+            return r;
+        }
 
-            return filtered;
+        /**
+         * Components found for several types at once.
+         */
+        public static final class ComponentsByType {
+            private final Map<Class<?>, List<ExtensionComponent<?>>> components;
+
+            ComponentsByType(Map<Class<?>, List<ExtensionComponent<?>>> components) {
+                this.components = components;
+            }
+
+            /**
+             * @return the requested types
+             */
+            public Set<Class<?>> getTypes() {
+                return Collections.unmodifiableSet(components.keySet());
+            }
+
+            /**
+             * @return a new list of the components of a type, empty if it was not requested
+             */
+            @SuppressWarnings("unchecked")
+            public <T> List<ExtensionComponent<T>> getComponents(Class<T> type) {
+                List<ExtensionComponent<T>> r = Lists.newArrayList();
+                for (ExtensionComponent<?> c : components.getOrDefault(type, Collections.emptyList())) {
+                    r.add((ExtensionComponent<T>) c);
+                }
+                return r;
+            }
+
+            /**
+             * @return a new list of the instances of a type, empty if it was not requested
+             */
+            public <T> List<T> get(Class<T> type) {
+                return instances(getComponents(type));
+            }
         }
     }
 
@@ -426,6 +934,16 @@ public class HyperLocalPluginManager extends LocalPluginManager {
 
         private volatile List<IndexItem<Extension, Object>> indices;
 
+        public SmallSezpoz() {}
+
+        /**
+         * Uses items read already, e.g. from the {@link ExtensionIndex}, rather
+         * than loading the index from a classloader.
+         */
+        SmallSezpoz(List<IndexItem<Extension, Object>> indices) {
+            this.indices = indices;
+        }
+
         private List<IndexItem<Extension, Object>> getIndices(ClassLoader cl) {
             if (indices == null) {
                 indices = ImmutableList.copyOf(Index.load(Extension.class, Object.class, cl));
@@ -463,15 +981,7 @@ public class HyperLocalPluginManager extends LocalPluginManager {
 
             for (IndexItem<Extension, Object> item : indices) {
                 try {
-                    AnnotatedElement e = item.element();
-                    Class<?> extType;
-                    if (e instanceof Class) {
-                        extType = (Class<?>) e;
-                    } else if (e instanceof Field) {
-                        extType = ((Field) e).getType();
-                    } else if (e instanceof Method) {
-                        extType = ((Method) e).getReturnType();
-                    } else throw new AssertionError();
+                    Class<?> extType = extensionType(item);
 
                     if (type.isAssignableFrom(extType)) {
                         Object instance = safeInstance(item);
@@ -487,6 +997,59 @@ public class HyperLocalPluginManager extends LocalPluginManager {
             return result;
         }
 
+        /**
+         * Finds the items matching any of several types in a single pass over
+         * the index. An item matching several types is instantiated once.
+         *
+         * @return the components of each type, in index order
+         */
+        public Map<Class<?>, List<ExtensionComponent<?>>> find(Collection<Class<?>> types, ClassLoader cl) {
+            Map<Class<?>, List<ExtensionComponent<?>>> result = new LinkedHashMap<>();
+            for (Class<?> type : types) {
+                result.put(type, new ArrayList<>());
+            }
+
+            for (IndexItem<Extension, Object> item : getIndices(cl)) {
+                try {
+                    Class<?> extType = extensionType(item);
+                    Object instance = null;
+                    for (Map.Entry<Class<?>, List<ExtensionComponent<?>>> e : result.entrySet()) {
+                        if (!e.getKey().isAssignableFrom(extType)) {
+                            continue;
+                        }
+                        if (instance == null) {
+                            instance = safeInstance(item);
+                            if (instance == null) break;
+                        }
+                        e.getValue().add(component(e.getKey(), instance, item.annotation()));
+                    }
+                } catch (LinkageError | Exception e) {
+                    // sometimes the instantiation fails in an indirect classloading failure,
+                    // which results in a LinkageError
+                    LOG.fine("Failed to load " + item.className() + "\n" + e);
+                }
+            }
+            return result;
+        }
+
+        private static <T> ExtensionComponent<T> component(Class<T> type, Object instance, Extension annotation) {
+            return new ExtensionComponent<>(type.cast(instance), annotation);
+        }
+
+        /**
+         * @return the type of the annotated class, field or method
+         */
+        private static Class<?> extensionType(IndexItem<Extension, Object> item) throws InstantiationException {
+            AnnotatedElement e = item.element();
+            if (e instanceof Class) {
+                return (Class<?>) e;
+            } else if (e instanceof Field) {
+                return ((Field) e).getType();
+            } else if (e instanceof Method) {
+                return ((Method) e).getReturnType();
+            } else throw new AssertionError();
+        }
+
         private Object safeInstance(IndexItem<Extension, Object> item) {
             try {
                 return item.instance();
@@ -502,15 +1065,7 @@ public class HyperLocalPluginManager extends LocalPluginManager {
         public void scout(ClassLoader cl) {
             for (IndexItem<Extension, Object> item : getIndices(cl)) {
                 try {
-                    AnnotatedElement e = item.element();
-                    Class<?> extType;
-                    if (e instanceof Class) {
-                        extType = (Class<?>) e;
-                    } else if (e instanceof Field) {
-                        extType = ((Field) e).getType();
-                    } else if (e instanceof Method) {
-                        extType = ((Method) e).getReturnType();
-                    } else throw new AssertionError();
+                    Class<?> extType = extensionType(item);
                     // according to JDK-4993813 this is the only way to force class initialization
                     Class.forName(extType.getName(), true, extType.getClassLoader());
                 } catch (Exception | LinkageError e) {
@@ -525,13 +1080,24 @@ public class HyperLocalPluginManager extends LocalPluginManager {
      * @return name of the plugin this class belongs to, or "core" if not found
      */
     public String getPluginNameForDescriptor(Descriptor<?> d) {
-        String className = d.getClass().getName();
+        return getPluginNameForClass(d.getClass().getName());
+    }
+
+    /**
+     * @param className binary name of a class
+     * @return name of the plugin this class belongs to, or "core" if not found
+     */
+    public String getPluginNameForClass(String className) {
+        String extensionPlugin = extensionIndex.getPlugin(className);
+        if (extensionPlugin != null) {
+            return extensionPlugin;
+        }
         // try one last time to find out which plugin this belongs to (needed for
         // WEBSITE-434)
         try {
             uberPlusClassLoader.findClass(className);
         } catch (ClassNotFoundException e) {
-            LOG.log(Level.FINER, "Class not found for " + d.getId());
+            LOG.log(Level.FINER, "Class not found for " + className);
         }
         String pluginName = uberPlusClassLoader.getByPlugin().get(className);
         if (pluginName == null) {
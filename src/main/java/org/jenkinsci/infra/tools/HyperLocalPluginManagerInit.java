@@ -0,0 +1,151 @@
+package org.jenkinsci.infra.tools;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.MockJenkins;
+import hudson.init.InitMilestone;
+import hudson.init.InitStrategy;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import jenkins.InitReactorRunner;
+import jenkins.model.Jenkins;
+import org.jvnet.hudson.reactor.Reactor;
+import org.jvnet.hudson.reactor.ReactorException;
+import org.jvnet.hudson.reactor.Task;
+import org.jvnet.hudson.reactor.TaskBuilder;
+import org.mockito.Mockito;
+
+/**
+ * Initializes a HyperLocalPluginManager instance behind a mocked Jenkins, so
+ * that it can be queried by tools and tests. Closing the plugin manager removes
+ * the mocked Jenkins again.
+ */
+public class HyperLocalPluginManagerInit {
+    /**
+     * Mocked holders of the plugin managers not closed yet, latest last. Closing
+     * them in any order leaves {@code Jenkins.HOLDER} to the latest open one,
+     * then to the holder there was before the first.
+     */
+    private static final Deque<Jenkins.JenkinsHolder> INSTALLED_HOLDERS = new ArrayDeque<>();
+
+    private static Object originalHolder;
+
+    public InitMilestone lastMilestone;
+    public HyperLocalPluginManager pluginManager;
+
+    public HyperLocalPluginManager initializeHyperLocalPluginManager(String pluginDir) {
+        return initializeHyperLocalPluginManager(pluginDir, new InitStrategy());
+    }
+
+    /**
+     * @param initStrategy decides which plugin archives get inspected
+     */
+    public HyperLocalPluginManager initializeHyperLocalPluginManager(String pluginDir, InitStrategy initStrategy) {
+        return initializeHyperLocalPluginManager(new HyperLocalPluginManager(pluginDir, false), initStrategy);
+    }
+
+    /**
+     * @param pm a plugin manager configured by the caller, e.g. in lazy mode
+     * @param initStrategy decides which plugin archives get inspected
+     * @throws IllegalStateException if the initialization failed, in which case
+     *         the plugin manager is closed already
+     */
+    public HyperLocalPluginManager initializeHyperLocalPluginManager(
+            HyperLocalPluginManager pm, InitStrategy initStrategy) {
+        try {
+            pluginManager = pm;
+
+            // Set up mocks
+            Jenkins.JenkinsHolder mockJenkinsHolder = mock(Jenkins.JenkinsHolder.class);
+            MockJenkins mJ = new MockJenkins();
+            Jenkins mockJenkins = mJ.getMockJenkins(pluginManager);
+            when(mockJenkinsHolder.getInstance()).thenReturn(mockJenkins);
+
+            java.lang.reflect.Field jenkinsHolderField = Jenkins.class.getDeclaredField("HOLDER");
+            jenkinsHolderField.setAccessible(true);
+            synchronized (INSTALLED_HOLDERS) {
+                if (INSTALLED_HOLDERS.isEmpty()) {
+                    originalHolder = jenkinsHolderField.get(null);
+                }
+                INSTALLED_HOLDERS.addLast(mockJenkinsHolder);
+                jenkinsHolderField.set(null, mockJenkinsHolder);
+            }
+            pluginManager.onClose(() -> {
+                try {
+                    synchronized (INSTALLED_HOLDERS) {
+                        INSTALLED_HOLDERS.removeLastOccurrence(mockJenkinsHolder);
+                        jenkinsHolderField.set(
+                                null, INSTALLED_HOLDERS.isEmpty() ? originalHolder : INSTALLED_HOLDERS.peekLast());
+                        if (INSTALLED_HOLDERS.isEmpty()) {
+                            originalHolder = null;
+                        }
+                    }
+                } catch (IllegalAccessException e) {
+                    throw new IOException("Cannot restore Jenkins.HOLDER", e);
+                }
+                mJ.release();
+                Mockito.framework().clearInlineMock(mockJenkinsHolder);
+            });
+
+            executeReactor(initStrategy, pluginManager.diagramPlugins(initStrategy));
+
+        } catch (Exception ex) {
+            // a partly initialized plugin manager would silently miss extensions
+            try {
+                pluginManager.close();
+            } catch (IOException e) {
+                ex.addSuppressed(e);
+            }
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Plugin Manager failed to initialize", ex);
+        }
+        return pluginManager;
+    }
+
+    /**
+     * Executes a reactor.
+     *
+     * @param is
+     *           If non-null, this can be consulted for ignoring some tasks. Only
+     *           used during the initialization of Jenkins.
+     */
+    private void executeReactor(final InitStrategy is, TaskBuilder... builders)
+            throws IOException, InterruptedException, ReactorException {
+        Reactor reactor = new Reactor(builders) {
+            /**
+             * Sets the thread name to the task for better diagnostics.
+             */
+            @Override
+            protected void runTask(Task task) throws Exception {
+                if (is != null && is.skipInitTask(task)) return;
+
+                String taskName = task.getDisplayName();
+
+                Thread t = Thread.currentThread();
+                String name = t.getName();
+
+                try (ACLContext context = ACL.as2(ACL.SYSTEM2)) { // full access in the initialization thread
+                    if (taskName != null) {
+                        t.setName(taskName);
+                    }
+                    super.runTask(task);
+                } finally {
+                    t.setName(name);
+                }
+            }
+        };
+
+        new InitReactorRunner() {
+            @Override
+            protected void onInitMilestoneAttained(InitMilestone milestone) {
+                lastMilestone = milestone;
+            }
+        }.run(reactor);
+    }
+}
@@ -0,0 +1,348 @@
+package org.jenkinsci.infra.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hudson.PluginWrapper;
+import hudson.model.Descriptor;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.structs.describable.DescribableModel;
+import org.jenkinsci.plugins.structs.describable.DescribableParameter;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+
+/**
+ * Serves metadata from an initialized {@link HyperLocalPluginManager} over HTTP
+ * on the loopback interface, so that several tools can share one bootstrap.
+ *
+ * All queries are {@code GET} requests answered with JSON:
+ * <ul>
+ * <li>{@code /components?type=<class>}: the components of an extension type</li>
+ * <li>{@code /plugin?class=<class>}: the plugin a class belongs to</li>
+ * <li>{@code /dependencies?plugin=<short name>}: dependencies and dependents of a plugin</li>
+ * <li>{@code /steps}: all steps with their parameters</li>
+ * </ul>
+ *
+ * Successful responses are cached, up to {@value #MAX_CACHED_RESPONSES} of them,
+ * except those about unknown classes. Queries run one at a time against the
+ * plugin manager, which is not thread-safe, while cached responses are served
+ * concurrently.
+ */
+public class MetadataDaemon implements Closeable {
+    private static final Logger LOG = Logger.getLogger(MetadataDaemon.class.getName());
+
+    static final int MAX_CACHED_RESPONSES = 1024;
+
+    private final HyperLocalPluginManager pluginManager;
+
+    /** Least recently used first. */
+    private final Map<String, Response> cache =
+            Collections.synchronizedMap(new LinkedHashMap<String, Response>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Response> eldest) {
+                    return size() > MAX_CACHED_RESPONSES;
+                }
+            });
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MetadataDaemon(HyperLocalPluginManager pluginManager) {
+        this.pluginManager = pluginManager;
+    }
+
+    /**
+     * Usage: {@code MetadataDaemon <Jenkins root directory> [port]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: MetadataDaemon <Jenkins root directory> [port]");
+            System.exit(1);
+        }
+        HyperLocalPluginManager pm = new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(args[0]);
+        MetadataDaemon daemon = new MetadataDaemon(pm);
+        daemon.start(args.length > 1 ? Integer.parseInt(args[1]) : 0);
+        System.out.println("Serving " + args[0] + " on http://localhost:" + daemon.getPort() + "/");
+    }
+
+    /**
+     * @param port port to listen on, or 0 for any free port
+     */
+    public synchronized void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    int getCachedResponseCount() {
+        return cache.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+        cache.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Response r;
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                r = Response.error(405, "Only GET is supported");
+            } else {
+                try {
+                    r = answer(
+                            exchange.getRequestURI().getPath(),
+                            parseQuery(exchange.getRequestURI().getRawQuery()));
+                } catch (QueryException e) {
+                    r = Response.error(e.status, e.getMessage());
+                }
+            }
+            byte[] body = r.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(r.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response answer(String path, Map<String, String> params) {
+        // the same whatever the parameter order or encoding
+        String key = path + "?" + new TreeMap<>(params);
+        Response r = cache.get(key);
+        if (r == null) {
+            synchronized (pluginManager) {
+                r = cache.get(key);
+                if (r == null) {
+                    r = query(path, params);
+                    if (r.cacheable) {
+                        cache.put(key, r);
+                    }
+                }
+            }
+        }
+        return r;
+    }
+
+    private Response query(String path, Map<String, String> params) {
+        try {
+            switch (path) {
+                case "/components":
+                    return Response.ok(components(required(params, "type")).toString());
+                case "/plugin":
+                    String className = required(params, "class");
+                    JSONObject plugin = plugin(className);
+                    // any string can be asked for, and unknown classes are reported as core
+                    return exists(className, plugin.getString("plugin"))
+                            ? Response.ok(plugin.toString())
+                            : new Response(200, plugin.toString(), false);
+                case "/dependencies":
+                    return Response.ok(dependencies(required(params, "plugin")).toString());
+                case "/steps":
+                    return Response.ok(steps().toString());
+                default:
+                    return Response.error(404, "Unknown query " + path);
+            }
+        } catch (QueryException e) {
+            return Response.error(e.status, e.getMessage());
+        } catch (RuntimeException | LinkageError e) {
+            LOG.log(Level.WARNING, "Failed to answer " + path + "?" + params, e);
+            return Response.error(500, e.toString());
+        }
+    }
+
+    private JSONArray components(String type) throws QueryException {
+        Class<?> c;
+        try {
+            c = pluginManager.uberPlusClassLoader.loadClass(type);
+        } catch (ClassNotFoundException e) {
+            throw new QueryException(404, "No such type " + type);
+        }
+        JSONArray r = new JSONArray();
+        for (Object component : pluginManager.getPluginStrategy().findComponents(c)) {
+            JSONObject o = new JSONObject();
+            o.put("class", component.getClass().getName());
+            o.put("plugin", pluginManager.getPluginNameForClass(component.getClass().getName()));
+            if (component instanceof Descriptor) {
+                o.put("id", ((Descriptor<?>) component).getId());
+            }
+            r.add(o);
+        }
+        return r;
+    }
+
+    private JSONObject plugin(String className) {
+        JSONObject r = new JSONObject();
+        r.put("class", className);
+        r.put("plugin", pluginManager.getPluginNameForClass(className));
+        return r;
+    }
+
+    private boolean exists(String className, String plugin) {
+        if (!"core".equals(plugin)) {
+            return true;
+        }
+        try {
+            pluginManager.uberPlusClassLoader.loadClass(className);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private JSONObject dependencies(String shortName) throws QueryException {
+        PluginWrapper p = pluginManager.getPlugin(shortName);
+        if (p == null) {
+            throw new QueryException(404, "No such plugin " + shortName);
+        }
+        // depending on the core version optional dependencies may also be listed in getDependencies()
+        Map<String, PluginWrapper.Dependency> deps = new LinkedHashMap<>();
+        for (PluginWrapper.Dependency d : p.getDependencies()) {
+            deps.putIfAbsent(d.shortName, d);
+        }
+        for (PluginWrapper.Dependency d : p.getOptionalDependencies()) {
+            deps.putIfAbsent(d.shortName, d);
+        }
+        JSONArray dependencies = new JSONArray();
+        for (PluginWrapper.Dependency d : deps.values()) {
+            dependencies.add(dependency(d));
+        }
+        JSONArray dependents = new JSONArray();
+        // getPlugins() only has the activated plugins in lazy mode
+        for (Map.Entry<String, List<String>> other : pluginManager.getInspectedDependencies().entrySet()) {
+            if (other.getValue().contains(shortName)) {
+                dependents.add(other.getKey());
+            }
+        }
+        JSONObject r = new JSONObject();
+        r.put("plugin", shortName);
+        r.put("version", p.getVersion());
+        r.put("dependencies", dependencies);
+        r.put("dependents", dependents);
+        return r;
+    }
+
+    private static JSONObject dependency(PluginWrapper.Dependency d) {
+        JSONObject r = new JSONObject();
+        r.put("plugin", d.shortName);
+        r.put("version", d.version);
+        r.put("optional", d.optional);
+        return r;
+    }
+
+    private JSONArray steps() {
+        JSONArray r = new JSONArray();
+        for (StepDescriptor d : pluginManager.getPluginStrategy().findComponents(StepDescriptor.class)) {
+            JSONObject step = new JSONObject();
+            step.put("functionName", d.getFunctionName());
+            step.put("displayName", d.getDisplayName());
+            step.put("class", d.clazz.getName());
+            step.put("plugin", pluginManager.getPluginNameForDescriptor(d));
+            step.put("advanced", d.isAdvanced());
+            step.put("takesImplicitBlockArgument", d.takesImplicitBlockArgument());
+            JSONArray parameters = new JSONArray();
+            try {
+                for (DescribableParameter p : DescribableModel.of(d.clazz).getParameters()) {
+                    JSONObject parameter = new JSONObject();
+                    parameter.put("name", p.getName());
+                    parameter.put("type", p.getType().toString());
+                    parameter.put("required", p.isRequired());
+                    parameters.add(parameter);
+                }
+            } catch (RuntimeException | LinkageError e) {
+                LOG.log(Level.FINE, "Cannot describe " + d.getFunctionName(), e);
+            }
+            step.put("parameters", parameters);
+            r.add(step);
+        }
+        return r;
+    }
+
+    private static String required(Map<String, String> params, String name) throws QueryException {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new QueryException(400, "Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws QueryException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            try {
+                params.put(
+                        URLDecoder.decode(name, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new QueryException(400, "Malformed parameter " + pair);
+            }
+        }
+        return params;
+    }
+
+    private static final class QueryException extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        QueryException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+        final boolean cacheable;
+
+        Response(int status, String body, boolean cacheable) {
+            this.status = status;
+            this.body = body;
+            this.cacheable = cacheable;
+        }
+
+        static Response ok(String body) {
+            return new Response(200, body, true);
+        }
+
+        static Response error(int status, String message) {
+            JSONObject r = new JSONObject();
+            r.put("error", message);
+            return new Response(status, r.toString(), false);
+        }
+    }
+}
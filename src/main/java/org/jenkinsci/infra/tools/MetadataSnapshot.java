@@ -0,0 +1,113 @@
+package org.jenkinsci.infra.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Step and extension metadata of a plugin set, keyed by plugin short name, as
+ * recorded by a {@link PluginSetDiff} run so that the next run can skip the
+ * plugins whose archives did not change.
+ */
+public final class MetadataSnapshot {
+    public static final MetadataSnapshot EMPTY = new MetadataSnapshot(Collections.emptySortedMap());
+
+    private final SortedMap<String, PluginMetadata> plugins;
+
+    MetadataSnapshot(SortedMap<String, PluginMetadata> plugins) {
+        this.plugins = Collections.unmodifiableSortedMap(plugins);
+    }
+
+    public SortedMap<String, PluginMetadata> getPlugins() {
+        return plugins;
+    }
+
+    public PluginMetadata getPlugin(String shortName) {
+        return plugins.get(shortName);
+    }
+
+    public static MetadataSnapshot read(File file) throws IOException {
+        JSONObject json = JSONObject.fromObject(Files.readString(file.toPath(), StandardCharsets.UTF_8));
+        SortedMap<String, PluginMetadata> plugins = new TreeMap<>();
+        JSONObject jsonPlugins = json.getJSONObject("plugins");
+        for (Object key : jsonPlugins.keySet()) {
+            JSONObject p = jsonPlugins.getJSONObject((String) key);
+            SortedMap<String, String> steps = new TreeMap<>();
+            JSONObject jsonSteps = p.getJSONObject("steps");
+            for (Object step : jsonSteps.keySet()) {
+                steps.put((String) step, jsonSteps.getString((String) step));
+            }
+            SortedSet<String> extensions = new TreeSet<>();
+            for (Object e : p.getJSONArray("extensions")) {
+                extensions.add((String) e);
+            }
+            plugins.put((String) key, new PluginMetadata(p.getString("digest"), steps, extensions));
+        }
+        return new MetadataSnapshot(plugins);
+    }
+
+    public void write(File file) throws IOException {
+        JSONObject jsonPlugins = new JSONObject();
+        for (Map.Entry<String, PluginMetadata> e : plugins.entrySet()) {
+            PluginMetadata p = e.getValue();
+            JSONObject jsonSteps = new JSONObject();
+            for (Map.Entry<String, String> step : p.getSteps().entrySet()) {
+                jsonSteps.put(step.getKey(), step.getValue());
+            }
+            JSONObject jsonPlugin = new JSONObject();
+            jsonPlugin.put("digest", p.getDigest());
+            jsonPlugin.put("steps", jsonSteps);
+            jsonPlugin.put("extensions", JSONArray.fromObject(p.getExtensions()));
+            jsonPlugins.put(e.getKey(), jsonPlugin);
+        }
+        JSONObject json = new JSONObject();
+        json.put("plugins", jsonPlugins);
+        Files.writeString(file.toPath(), json.toString(2), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * What a snapshot knows about one plugin.
+     */
+    public static final class PluginMetadata {
+        private final String digest;
+        private final SortedMap<String, String> steps;
+        private final SortedSet<String> extensions;
+
+        PluginMetadata(String digest, SortedMap<String, String> steps, SortedSet<String> extensions) {
+            this.digest = digest;
+            this.steps = Collections.unmodifiableSortedMap(steps);
+            this.extensions = Collections.unmodifiableSortedSet(extensions);
+        }
+
+        /**
+         * @return SHA-256 of the plugin archive, see {@link PluginArchive#getDigest()}
+         */
+        public String getDigest() {
+            return digest;
+        }
+
+        /**
+         * @return step function name to a signature that changes whenever the
+         *         step's descriptor class or parameters change
+         */
+        public SortedMap<String, String> getSteps() {
+            return steps;
+        }
+
+        /**
+         * @return class names of the extensions the plugin declares
+         */
+        public SortedSet<String> getExtensions() {
+            return extensions;
+        }
+    }
+}
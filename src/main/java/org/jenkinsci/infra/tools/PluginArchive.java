@@ -0,0 +1,328 @@
+package org.jenkinsci.infra.tools;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Metadata of a plugin archive ({@code .jpi} or {@code .hpi}) read straight
+ * from its manifest, without exploding it or creating a classloader.
+ */
+public final class PluginArchive {
+    private static final String CLASSES = "WEB-INF/classes/";
+    private static final String LIB = "WEB-INF/lib/";
+
+    private static final int END_HEADER = 0x06054b50;
+    private static final int END_HEADER_LENGTH = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int UTF8_FLAG = 0x800;
+
+    private final File file;
+    private final String shortName;
+    private final List<String> dependencies;
+    private volatile String digest;
+
+    private PluginArchive(File file, String shortName, List<String> dependencies) {
+        this.file = file;
+        this.shortName = shortName;
+        this.dependencies = dependencies;
+    }
+
+    public static PluginArchive read(File archive) throws IOException {
+        try (JarFile jar = new JarFile(archive)) {
+            Manifest manifest = jar.getManifest();
+            Attributes atts = manifest != null ? manifest.getMainAttributes() : new Attributes();
+            String shortName = atts.getValue("Short-Name");
+            if (shortName == null) {
+                shortName = atts.getValue("Extension-Name");
+            }
+            if (shortName == null) {
+                shortName = baseName(archive);
+            }
+            return new PluginArchive(
+                    archive, shortName.trim(), parseDependencies(atts.getValue("Plugin-Dependencies")));
+        }
+    }
+
+    /**
+     * @param deps e.g. {@code structs:1.20,workflow-cps:2.0;resolution:=optional}
+     */
+    private static List<String> parseDependencies(String deps) {
+        if (deps == null || deps.isBlank()) {
+            return Collections.emptyList();
+        }
+        List<String> r = new ArrayList<>();
+        for (String dep : deps.split(",")) {
+            String name = dep.split("[:;]", 2)[0].trim();
+            if (!name.isEmpty()) {
+                r.add(name);
+            }
+        }
+        return Collections.unmodifiableList(r);
+    }
+
+    /**
+     * Lists the plugin archives directly inside a directory, sorted by name.
+     */
+    public static List<File> list(File dir) {
+        File[] files = dir.listFiles((d, name) -> {
+            String n = name.toLowerCase(Locale.ENGLISH);
+            return n.endsWith(".jpi") || n.endsWith(".hpi");
+        });
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<File> archives = new ArrayList<>(List.of(files));
+        Collections.sort(archives);
+        return archives;
+    }
+
+    private static String baseName(File archive) {
+        String name = archive.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getShortName() {
+        return shortName;
+    }
+
+    /**
+     * @return short names of the plugins this one depends on, optional ones included
+     */
+    public List<String> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * @return hex SHA-256 of the archive, computed on first use
+     */
+    public String getDigest() throws IOException {
+        String d = digest;
+        if (d == null) {
+            digest = d = digest(file);
+        }
+        return d;
+    }
+
+    /**
+     * @return hex SHA-256 of a file
+     */
+    static String digest(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return digest(in);
+        }
+    }
+
+    /**
+     * @return hex SHA-256 of the rest of a stream, which is left open
+     */
+    static String digest(InputStream in) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            md.update(buf, 0, n);
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /**
+     * Lists the directories of the plugin's class path, i.e. of
+     * {@code WEB-INF/classes} and of the jars in {@code WEB-INF/lib}, holding
+     * at least one class or resource. Files at the root are listed under {@code ""}.
+     *
+     * Only the central directories of the archive and of its jars are read, not
+     * the entries themselves.
+     *
+     * @return e.g. {@code hudson/plugins/git} and {@code META-INF/annotations}
+     */
+    Set<String> readClassPathDirectories() throws IOException {
+        Set<String> dirs = new HashSet<>();
+        try (ZipFile zip = new ZipFile(file)) {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry e = zipEntries.nextElement();
+                String name = e.getName();
+                if (e.isDirectory()) {
+                    continue;
+                }
+                if (name.startsWith(CLASSES)) {
+                    dirs.add(directoryOf(name.substring(CLASSES.length())));
+                } else if (name.startsWith(LIB) && name.endsWith(".jar")) {
+                    for (String path : readEntryNames(zip, e)) {
+                        if (!path.endsWith("/")) {
+                            dirs.add(directoryOf(path));
+                        }
+                    }
+                }
+            }
+        }
+        return dirs;
+    }
+
+    /**
+     * Lists the entries of a jar nested in an archive from the jar's central
+     * directory. A stored jar is read from its end directly; a compressed one
+     * still has to be inflated up to there, but its entries are not.
+     */
+    static List<String> readEntryNames(ZipFile zip, ZipEntry jar) throws IOException {
+        long size = jar.getSize();
+        int tailLength = (int) Math.min(size, END_HEADER_LENGTH + MAX_COMMENT_LENGTH);
+        byte[] tail = readRange(zip, jar, size - tailLength, tailLength);
+        int end = tailLength - END_HEADER_LENGTH;
+        while (end >= 0 && int32(tail, end) != END_HEADER) {
+            end--;
+        }
+        if (end < 0) {
+            throw new ZipException("No central directory in " + jar.getName() + " of " + zip.getName());
+        }
+        long cdSize = int32(tail, end + 12) & 0xFFFFFFFFL;
+        long cdOffset = int32(tail, end + 16) & 0xFFFFFFFFL;
+        if (cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL || cdOffset + cdSize > size) {
+            return readEntryNamesSequentially(zip, jar); // Zip64, or data before the jar
+        }
+        long tailStart = size - tailLength;
+        byte[] cd = cdOffset >= tailStart
+                ? Arrays.copyOfRange(tail, (int) (cdOffset - tailStart), (int) (cdOffset - tailStart + cdSize))
+                : readRange(zip, jar, cdOffset, (int) cdSize);
+
+        List<String> names = new ArrayList<>();
+        int i = 0;
+        while (i + CENTRAL_HEADER_LENGTH <= cd.length && int32(cd, i) == CENTRAL_HEADER) {
+            int flags = int16(cd, i + 8);
+            int nameLength = int16(cd, i + 28);
+            int extraLength = int16(cd, i + 30);
+            int commentLength = int16(cd, i + 32);
+            names.add(new String(
+                    cd,
+                    i + CENTRAL_HEADER_LENGTH,
+                    nameLength,
+                    (flags & UTF8_FLAG) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1));
+            i += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+        }
+        return names;
+    }
+
+    private static List<String> readEntryNamesSequentially(ZipFile zip, ZipEntry jar) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(zip.getInputStream(jar))) {
+            ZipEntry e;
+            while ((e = in.getNextEntry()) != null) {
+                names.add(e.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Skipping is free in a stored entry.
+     */
+    private static byte[] readRange(ZipFile zip, ZipEntry e, long offset, int length) throws IOException {
+        try (InputStream in = zip.getInputStream(e)) {
+            in.skipNBytes(offset);
+            byte[] r = in.readNBytes(length);
+            if (r.length < length) {
+                throw new EOFException("Truncated " + e.getName() + " in " + zip.getName());
+            }
+            return r;
+        }
+    }
+
+    private static int int16(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8;
+    }
+
+    private static int int32(byte[] b, int i) {
+        return int16(b, i) | int16(b, i + 2) << 16;
+    }
+
+    /**
+     * @return whether a path of the archive is a library jar, i.e. a jar of
+     *         {@code WEB-INF/lib} other than the plugin's own classes
+     */
+    boolean isLibrary(String path) {
+        return path.startsWith(LIB) && path.endsWith(".jar") && !path.equals(LIB + shortName + ".jar");
+    }
+
+    static String directoryOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+
+    /**
+     * Visits the files of the plugin's class path: those in
+     * {@code WEB-INF/classes} and those in the jars of {@code WEB-INF/lib}.
+     */
+    void forEachClassPathEntry(EntryVisitor visitor) throws IOException {
+        try (ZipFile zip = new ZipFile(file)) {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry e = zipEntries.nextElement();
+                String name = e.getName();
+                if (e.isDirectory()) {
+                    continue;
+                }
+                if (name.startsWith(CLASSES)) {
+                    try (InputStream in = zip.getInputStream(e)) {
+                        visitor.visit(name.substring(CLASSES.length()), in);
+                    }
+                } else if (name.startsWith(LIB) && name.endsWith(".jar")) {
+                    try (ZipInputStream jar = new ZipInputStream(zip.getInputStream(e))) {
+                        ZipEntry je;
+                        while ((je = jar.getNextEntry()) != null) {
+                            if (!je.isDirectory()) {
+                                visitor.visit(je.getName(), jar);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    interface EntryVisitor {
+        /**
+         * @param path path relative to the class path root
+         * @param in the content of the entry; must not be closed
+         */
+        void visit(String path, InputStream in) throws IOException;
+    }
+
+    @Override
+    public String toString() {
+        return shortName + " (" + file + ")";
+    }
+}
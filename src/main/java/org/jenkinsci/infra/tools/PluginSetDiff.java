@@ -0,0 +1,396 @@
+package org.jenkinsci.infra.tools;
+
+import hudson.PluginManager;
+import hudson.init.InitStrategy;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jenkinsci.infra.tools.MetadataSnapshot.PluginMetadata;
+import org.jenkinsci.infra.tools.StaticExtensionScanner.StaticExtension;
+import org.jenkinsci.plugins.structs.describable.ArrayType;
+import org.jenkinsci.plugins.structs.describable.DescribableModel;
+import org.jenkinsci.plugins.structs.describable.DescribableParameter;
+import org.jenkinsci.plugins.structs.describable.HomogeneousObjectType;
+import org.jenkinsci.plugins.structs.describable.ParameterType;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+
+/**
+ * Compares a plugin directory against the {@link MetadataSnapshot} of a previous
+ * run, re-extracting only what may have changed.
+ *
+ * A plugin is affected when its archive was added or changed, or when one of
+ * its dependencies, directly or transitively, was added, changed or removed.
+ * Only the affected plugins and their dependencies get loaded into a
+ * {@link HyperLocalPluginManager}; everything else is carried over from the
+ * previous snapshot.
+ */
+public class PluginSetDiff {
+    private static final Logger LOG = Logger.getLogger(PluginSetDiff.class.getName());
+
+    private final SortedSet<String> affectedPlugins;
+    private final SortedSet<String> loadedPlugins;
+    private final SortedMap<String, PluginChanges> changes;
+    private final MetadataSnapshot snapshot;
+
+    private PluginSetDiff(
+            SortedSet<String> affectedPlugins,
+            SortedSet<String> loadedPlugins,
+            SortedMap<String, PluginChanges> changes,
+            MetadataSnapshot snapshot) {
+        this.affectedPlugins = Collections.unmodifiableSortedSet(affectedPlugins);
+        this.loadedPlugins = Collections.unmodifiableSortedSet(loadedPlugins);
+        this.changes = Collections.unmodifiableSortedMap(changes);
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Takes a full snapshot of a plugin set.
+     *
+     * @param rootDir Jenkins root directory; plugin archives are in its {@code plugins} subdirectory
+     */
+    public static MetadataSnapshot snapshot(String rootDir) throws IOException {
+        return compute(MetadataSnapshot.EMPTY, rootDir).getSnapshot();
+    }
+
+    /**
+     * @param previous snapshot of the previous run, or {@link MetadataSnapshot#EMPTY}
+     * @param rootDir Jenkins root directory; plugin archives are in its {@code plugins} subdirectory
+     */
+    public static PluginSetDiff compute(MetadataSnapshot previous, String rootDir) throws IOException {
+        Map<String, PluginArchive> archives = new HashMap<>();
+        for (File arc : PluginArchive.list(new File(rootDir, "plugins"))) {
+            PluginArchive archive = PluginArchive.read(arc);
+            archives.putIfAbsent(archive.getShortName(), archive);
+        }
+
+        Set<String> changed = new HashSet<>();
+        for (PluginArchive archive : archives.values()) {
+            PluginMetadata old = previous.getPlugin(archive.getShortName());
+            if (old == null || !old.getDigest().equals(archive.getDigest())) {
+                changed.add(archive.getShortName());
+            }
+        }
+        for (String shortName : previous.getPlugins().keySet()) {
+            if (!archives.containsKey(shortName)) {
+                changed.add(shortName);
+            }
+        }
+
+        Map<String, Set<String>> dependents = new HashMap<>();
+        for (PluginArchive archive : archives.values()) {
+            for (String dep : archive.getDependencies()) {
+                dependents.computeIfAbsent(dep, k -> new HashSet<>()).add(archive.getShortName());
+            }
+        }
+        SortedSet<String> affected = new TreeSet<>(closure(changed, dependents::get));
+        affected.retainAll(archives.keySet());
+
+        SortedSet<String> toLoad = new TreeSet<>(closure(affected, shortName -> {
+            PluginArchive archive = archives.get(shortName);
+            return archive != null ? archive.getDependencies() : null;
+        }));
+        toLoad.retainAll(archives.keySet());
+        LOG.info(changed.size() + " plugins changed, " + affected.size() + " affected, loading " + toLoad.size());
+
+        Map<String, SortedMap<String, String>> steps = new HashMap<>();
+        Map<String, SortedSet<String>> extensions = new HashMap<>();
+        if (!affected.isEmpty()) {
+            List<File> files = new ArrayList<>();
+            for (String shortName : toLoad) {
+                files.add(archives.get(shortName).getFile());
+            }
+            try (HyperLocalPluginManager pm = new HyperLocalPluginManagerInit()
+                    .initializeHyperLocalPluginManager(rootDir, new SubsetInitStrategy(files))) {
+                checkLoaded(pm, toLoad);
+                for (StepDescriptor d : pm.getPluginStrategy().findComponents(StepDescriptor.class)) {
+                    String plugin = pm.getPluginNameForDescriptor(d);
+                    if (affected.contains(plugin)) {
+                        steps.computeIfAbsent(plugin, k -> new TreeMap<>()).put(d.getFunctionName(), signature(d));
+                    }
+                }
+            }
+
+            List<File> affectedFiles = new ArrayList<>();
+            for (String shortName : affected) {
+                affectedFiles.add(archives.get(shortName).getFile());
+            }
+            for (StaticExtension e : new StaticExtensionScanner().scan(affectedFiles)) {
+                String name = e.getMemberName() != null ? e.getClassName() + "." + e.getMemberName() : e.getClassName();
+                extensions.computeIfAbsent(e.getPlugin(), k -> new TreeSet<>()).add(name);
+            }
+        }
+
+        SortedMap<String, PluginMetadata> plugins = new TreeMap<>();
+        SortedMap<String, PluginChanges> changes = new TreeMap<>();
+        for (PluginArchive archive : archives.values()) {
+            String shortName = archive.getShortName();
+            PluginMetadata old = previous.getPlugin(shortName);
+            if (!affected.contains(shortName)) {
+                plugins.put(shortName, old);
+                continue;
+            }
+            PluginMetadata current = new PluginMetadata(
+                    archive.getDigest(),
+                    steps.getOrDefault(shortName, Collections.emptySortedMap()),
+                    extensions.getOrDefault(shortName, Collections.emptySortedSet()));
+            plugins.put(shortName, current);
+            PluginChanges c = PluginChanges.between(old, current);
+            if (!c.isEmpty()) {
+                changes.put(shortName, c);
+            }
+        }
+        for (Map.Entry<String, PluginMetadata> e : previous.getPlugins().entrySet()) {
+            if (!archives.containsKey(e.getKey())) {
+                changes.put(e.getKey(), PluginChanges.between(e.getValue(), null));
+            }
+        }
+        return new PluginSetDiff(affected, toLoad, changes, new MetadataSnapshot(plugins));
+    }
+
+    /**
+     * Missing plugins would make their steps look removed, and that would be
+     * recorded in the snapshot for the next run.
+     */
+    private static void checkLoaded(HyperLocalPluginManager pm, Set<String> plugins) throws IOException {
+        SortedSet<String> missing = new TreeSet<>();
+        for (String shortName : plugins) {
+            if (pm.getPlugin(shortName) == null) {
+                missing.add(shortName);
+            }
+        }
+        if (!missing.isEmpty()) {
+            IOException e = new IOException("Failed to load " + missing);
+            for (PluginManager.FailedPlugin p : pm.getFailedPlugins()) {
+                if (p.cause != null) {
+                    e.addSuppressed(p.cause);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private interface Edges {
+        Iterable<String> of(String shortName);
+    }
+
+    private static Set<String> closure(Set<String> roots, Edges edges) {
+        Set<String> result = new HashSet<>(roots);
+        Deque<String> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            Iterable<String> next = edges.of(queue.pop());
+            if (next == null) {
+                continue;
+            }
+            for (String n : next) {
+                if (result.add(n)) {
+                    queue.push(n);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Only looks at what the step class declares, i.e. the names, declared types
+     * and requirement of its parameters. The implementations of an abstract
+     * parameter type, such as the {@code SCM}s of {@code checkout}, depend on
+     * which plugins happen to be loaded, and are left out.
+     *
+     * @return a description of the step that changes whenever its descriptor
+     *         class or its parameters change
+     */
+    static String signature(StepDescriptor d) {
+        try {
+            StringBuilder b = new StringBuilder(d.clazz.getName()).append('(');
+            String sep = "";
+            for (DescribableParameter p : DescribableModel.of(d.clazz).getParameters()) {
+                b.append(sep).append(p.isRequired() ? "" : "?").append(p.getName()).append(": ");
+                b.append(typeName(p.getType()));
+                sep = ", ";
+            }
+            return b.append(')').toString();
+        } catch (RuntimeException | LinkageError e) {
+            LOG.log(Level.FINE, "Cannot describe " + d.getFunctionName(), e);
+            return d.clazz.getName();
+        }
+    }
+
+    /**
+     * @return the declared type, with the element type of arrays and collections
+     *         but without the subtypes of abstract types, as those depend on the
+     *         plugins loaded
+     */
+    private static String typeName(ParameterType type) {
+        if (type instanceof ArrayType) {
+            String element = typeName(((ArrayType) type).getElementType());
+            Class<?> c = erasure(type.getActualType());
+            return c == null || c.isArray() ? element + "[]" : c.getName() + "<" + element + ">";
+        }
+        if (type instanceof HomogeneousObjectType) {
+            return ((HomogeneousObjectType) type).getType().getName();
+        }
+        Class<?> c = erasure(type.getActualType());
+        return c != null ? c.getName() : type.getActualType().getTypeName();
+    }
+
+    private static Class<?> erasure(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return erasure(((ParameterizedType) type).getRawType());
+        }
+        return null;
+    }
+
+    /**
+     * @return plugins that were added or changed, or depend on one that was
+     *         added, changed or removed
+     */
+    public SortedSet<String> getAffectedPlugins() {
+        return affectedPlugins;
+    }
+
+    /**
+     * @return plugins that had to be loaded to query the affected ones
+     */
+    public SortedSet<String> getLoadedPlugins() {
+        return loadedPlugins;
+    }
+
+    /**
+     * @return plugins whose steps or extensions changed, including removed plugins
+     */
+    public SortedMap<String, PluginChanges> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return snapshot of the current plugin set, to pass to the next run
+     */
+    public MetadataSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Only lists the given plugin archives.
+     */
+    private static final class SubsetInitStrategy extends InitStrategy {
+        private final Set<String> names = new HashSet<>();
+
+        SubsetInitStrategy(List<File> archives) {
+            for (File arc : archives) {
+                names.add(arc.getName());
+            }
+        }
+
+        @Override
+        public List<File> listPluginArchives(PluginManager pm) throws IOException {
+            List<File> r = new ArrayList<>();
+            for (File arc : super.listPluginArchives(pm)) {
+                if (names.contains(arc.getName())) {
+                    r.add(arc);
+                }
+            }
+            return r;
+        }
+    }
+
+    /**
+     * Step and extension changes of one plugin.
+     */
+    public static final class PluginChanges {
+        private final SortedSet<String> addedSteps = new TreeSet<>();
+        private final SortedSet<String> removedSteps = new TreeSet<>();
+        private final SortedSet<String> changedSteps = new TreeSet<>();
+        private final SortedSet<String> addedExtensions = new TreeSet<>();
+        private final SortedSet<String> removedExtensions = new TreeSet<>();
+
+        /**
+         * @param before {@code null} for an added plugin
+         * @param after {@code null} for a removed plugin
+         */
+        static PluginChanges between(PluginMetadata before, PluginMetadata after) {
+            Map<String, String> oldSteps = before != null ? before.getSteps() : Collections.emptyMap();
+            Map<String, String> newSteps = after != null ? after.getSteps() : Collections.emptyMap();
+            Set<String> oldExtensions = before != null ? before.getExtensions() : Collections.emptySet();
+            Set<String> newExtensions = after != null ? after.getExtensions() : Collections.emptySet();
+
+            PluginChanges c = new PluginChanges();
+            for (Map.Entry<String, String> step : newSteps.entrySet()) {
+                if (!oldSteps.containsKey(step.getKey())) {
+                    c.addedSteps.add(step.getKey());
+                } else if (!Objects.equals(oldSteps.get(step.getKey()), step.getValue())) {
+                    c.changedSteps.add(step.getKey());
+                }
+            }
+            for (String step : oldSteps.keySet()) {
+                if (!newSteps.containsKey(step)) {
+                    c.removedSteps.add(step);
+                }
+            }
+            for (String e : newExtensions) {
+                if (!oldExtensions.contains(e)) {
+                    c.addedExtensions.add(e);
+                }
+            }
+            for (String e : oldExtensions) {
+                if (!newExtensions.contains(e)) {
+                    c.removedExtensions.add(e);
+                }
+            }
+            return c;
+        }
+
+        public boolean isEmpty() {
+            return addedSteps.isEmpty()
+                    && removedSteps.isEmpty()
+                    && changedSteps.isEmpty()
+                    && addedExtensions.isEmpty()
+                    && removedExtensions.isEmpty();
+        }
+
+        public SortedSet<String> getAddedSteps() {
+            return Collections.unmodifiableSortedSet(addedSteps);
+        }
+
+        public SortedSet<String> getRemovedSteps() {
+            return Collections.unmodifiableSortedSet(removedSteps);
+        }
+
+        public SortedSet<String> getChangedSteps() {
+            return Collections.unmodifiableSortedSet(changedSteps);
+        }
+
+        public SortedSet<String> getAddedExtensions() {
+            return Collections.unmodifiableSortedSet(addedExtensions);
+        }
+
+        public SortedSet<String> getRemovedExtensions() {
+            return Collections.unmodifiableSortedSet(removedExtensions);
+        }
+
+        @Override
+        public String toString() {
+            return "steps +" + addedSteps + " -" + removedSteps + " ~" + changedSteps
+                    + ", extensions +" + addedExtensions + " -" + removedExtensions;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package org.jenkinsci.infra.tools;
+
+import hudson.Extension;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.java.sezpoz.impl.SerAnnotatedElement;
+
+/**
+ * Lists the {@link Extension}s of a set of plugins without loading them.
+ *
+ * Unlike {@link HyperLocalPluginManager}, nothing here defines or initializes a
+ * plugin class: the Sezpoz index ({@code META-INF/annotations/hudson.Extension})
+ * and the class files are read straight from the plugin archives, and the type
+ * hierarchy is resolved from the bytecode. Types outside the scanned plugins
+ * (e.g. Jenkins core) are resolved from the class files visible to this
+ * library, again without defining them.
+ *
+ * This is meant for inventory-style queries over many plugins, such as the
+ * whole update center. It cannot tell whether an extension would actually
+ * instantiate, nor apply {@link jenkins.ExtensionFilter}s, so it may report
+ * more extensions than a running Jenkins would.
+ *
+ * Instances are not thread-safe.
+ */
+public class StaticExtensionScanner {
+    private static final Logger LOG = Logger.getLogger(StaticExtensionScanner.class.getName());
+    private static final String INDEX = "META-INF/annotations/" + Extension.class.getName();
+
+    /** Only the Sezpoz structures and the JDK types they hold may be deserialized from an index. */
+    private static final ObjectInputFilter INDEX_FILTER = info -> {
+        Class<?> c = info.serialClass();
+        while (c != null && c.isArray()) {
+            c = c.getComponentType();
+        }
+        if (c == null || c.isPrimitive()) {
+            return ObjectInputFilter.Status.UNDECIDED;
+        }
+        String name = c.getName();
+        if (name.startsWith("net.java.sezpoz.impl.")
+                || name.startsWith("java.lang.")
+                || name.startsWith("java.util.")) {
+            return ObjectInputFilter.Status.ALLOWED;
+        }
+        return ObjectInputFilter.Status.REJECTED;
+    };
+
+    private final ClassLoader coreBytecode;
+    /**
+     * Class name to the names of its super class and interfaces; all that is kept
+     * of the class files, so a whole update center fits in memory.
+     */
+    private final Map<String, String[]> directSupertypes = new HashMap<>();
+
+    /** One instance per distinct name, as the same supertypes come up over and over. */
+    private final Map<String, String> names = new HashMap<>();
+
+    private final Set<String> missingClasses = new HashSet<>();
+    private final Map<String, Set<String>> supertypes = new HashMap<>();
+    private final Map<String, File> scannedPlugins = new HashMap<>();
+    private final List<StaticExtension> extensions = new ArrayList<>();
+
+    public StaticExtensionScanner() {
+        this(StaticExtensionScanner.class.getClassLoader());
+    }
+
+    /**
+     * @param coreBytecode where to read the class files of types that are not
+     *                     part of the scanned plugins; only used as a resource source
+     */
+    public StaticExtensionScanner(ClassLoader coreBytecode) {
+        this.coreBytecode = coreBytecode;
+    }
+
+    /**
+     * Scans all plugin archives directly inside a directory.
+     *
+     * @return the extensions found so far, including earlier scans
+     */
+    public List<StaticExtension> scan(File pluginDir) {
+        return scan(PluginArchive.list(pluginDir));
+    }
+
+    /**
+     * Scans the given plugin archives. An archive that cannot be read is logged
+     * and skipped.
+     *
+     * @return the extensions found so far, including earlier scans
+     */
+    public List<StaticExtension> scan(Collection<File> archives) {
+        // the new archives may define types that earlier lookups could not find
+        supertypes.clear();
+        missingClasses.clear();
+        for (File arc : archives) {
+            try {
+                scanArchive(arc);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to scan " + arc, e);
+            }
+        }
+        return getExtensions();
+    }
+
+    public List<StaticExtension> getExtensions() {
+        return Collections.unmodifiableList(extensions);
+    }
+
+    /**
+     * @param type binary name of an extension point, e.g.
+     *             {@code org.jenkinsci.plugins.workflow.steps.StepDescriptor}
+     * @return the extensions assignable to {@code type}, highest ordinal first
+     *         like in an {@link hudson.ExtensionList}
+     */
+    public List<StaticExtension> findExtensions(String type) {
+        List<StaticExtension> result = new ArrayList<>();
+        for (StaticExtension e : extensions) {
+            if (e.getType() != null && getSupertypes(e.getType()).contains(type)) {
+                result.add(e);
+            }
+        }
+        result.sort(Comparator.comparingDouble(StaticExtension::getOrdinal).reversed());
+        return result;
+    }
+
+    public List<StaticExtension> findExtensions(Class<?> type) {
+        return findExtensions(type.getName());
+    }
+
+    /**
+     * @return {@code className} and all its super classes and interfaces, as far
+     *         as their class files can be found
+     */
+    public Set<String> getSupertypes(String className) {
+        Set<String> cached = supertypes.get(className);
+        if (cached != null) {
+            return cached;
+        }
+        // guards against cycles in broken bytecode
+        supertypes.put(className, Collections.singleton(className));
+
+        Set<String> result = new LinkedHashSet<>();
+        result.add(className);
+        String[] direct = lookup(className);
+        if (direct != null) {
+            for (String s : direct) {
+                result.addAll(getSupertypes(s));
+            }
+        }
+        Set<String> r = Collections.unmodifiableSet(result);
+        supertypes.put(className, r);
+        return r;
+    }
+
+    private String[] lookup(String className) {
+        String[] direct = directSupertypes.get(className);
+        if (direct != null || missingClasses.contains(className)) {
+            return direct;
+        }
+        try (InputStream in = coreBytecode.getResourceAsStream(className.replace('.', '/') + ".class")) {
+            if (in != null) {
+                return record(ClassFileInfo.read(in, false));
+            }
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Failed to read class file of " + className, e);
+        }
+        missingClasses.add(className);
+        return null;
+    }
+
+    /**
+     * Keeps the direct supertypes of a class, unless it is already known.
+     *
+     * @return the direct supertypes of {@code info}
+     */
+    private String[] record(ClassFileInfo info) {
+        String[] known = directSupertypes.get(info.name);
+        if (known != null) {
+            return known;
+        }
+        List<String> direct = new ArrayList<>(info.interfaces.size() + 1);
+        if (info.superName != null) {
+            direct.add(canonical(info.superName));
+        }
+        for (String i : info.interfaces) {
+            direct.add(canonical(i));
+        }
+        String[] r = direct.toArray(new String[0]);
+        directSupertypes.put(canonical(info.name), r);
+        return r;
+    }
+
+    private String canonical(String name) {
+        String known = names.putIfAbsent(name, name);
+        return known != null ? known : name;
+    }
+
+    private void scanArchive(File arc) throws IOException {
+        PluginArchive archive = PluginArchive.read(arc);
+        String shortName = archive.getShortName();
+        File previous = scannedPlugins.putIfAbsent(shortName, arc);
+        if (previous != null) {
+            LOG.info("Ignoring " + arc + " because " + previous + " is already scanned");
+            return;
+        }
+        LOG.fine("Scanning plugin " + arc);
+
+        List<IndexEntry> entries = new ArrayList<>();
+        archive.forEachClassPathEntry((path, in) -> {
+            if (path.equals(INDEX)) {
+                readIndex(in, entries);
+            } else if (ClassFileInfo.isClassFile(path)) {
+                try {
+                    record(ClassFileInfo.read(in, false));
+                } catch (IOException e) {
+                    LOG.log(Level.FINE, "Failed to read " + path + " in " + arc, e);
+                }
+            }
+        });
+
+        // @Extension on fields and methods: the type is that of the member, which
+        // requires a second look at the declaring classes
+        Set<String> declaringClasses = new HashSet<>();
+        for (IndexEntry entry : entries) {
+            if (entry.memberName != null) {
+                declaringClasses.add(entry.className);
+            }
+        }
+        Map<String, ClassFileInfo> withMembers = new HashMap<>();
+        if (!declaringClasses.isEmpty()) {
+            archive.forEachClassPathEntry((path, in) -> {
+                if (ClassFileInfo.isClassFile(path) && declaringClasses.contains(binaryName(path))) {
+                    ClassFileInfo info = ClassFileInfo.read(in, true);
+                    withMembers.put(info.name, info);
+                }
+            });
+        }
+
+        for (IndexEntry entry : entries) {
+            String type = entry.className;
+            if (entry.memberName != null) {
+                ClassFileInfo info = withMembers.get(entry.className);
+                type = info != null ? info.memberTypes.get(entry.memberName) : null;
+                if (type == null) {
+                    LOG.fine("Cannot resolve the type of " + entry.className + "." + entry.memberName);
+                }
+            }
+            extensions.add(new StaticExtension(entry.className, entry.memberName, type, shortName, entry.ordinal));
+        }
+    }
+
+    private static void readIndex(InputStream in, List<IndexEntry> entries) throws IOException {
+        // not closed: that would close the enclosing archive stream
+        ObjectInputStream ois = new ObjectInputStream(in);
+        ois.setObjectInputFilter(INDEX_FILTER);
+        while (true) {
+            SerAnnotatedElement el;
+            try {
+                el = (SerAnnotatedElement) ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+            if (el == null) {
+                return;
+            }
+            Object ordinal = el.values.get("ordinal");
+            entries.add(new IndexEntry(
+                    el.className, el.memberName, ordinal instanceof Number ? ((Number) ordinal).doubleValue() : 0));
+        }
+    }
+
+    private static String binaryName(String path) {
+        return path.substring(0, path.length() - ".class".length()).replace('/', '.');
+    }
+
+    private static final class IndexEntry {
+        final String className;
+        final String memberName;
+        final double ordinal;
+
+        IndexEntry(String className, String memberName, double ordinal) {
+            this.className = className;
+            this.memberName = memberName;
+            this.ordinal = ordinal;
+        }
+    }
+
+    /**
+     * An {@link Extension} found in a plugin archive.
+     */
+    public static final class StaticExtension {
+        private final String className;
+        private final String memberName;
+        private final String type;
+        private final String plugin;
+        private final double ordinal;
+
+        StaticExtension(String className, String memberName, String type, String plugin, double ordinal) {
+            this.className = className;
+            this.memberName = memberName;
+            this.type = type;
+            this.plugin = plugin;
+            this.ordinal = ordinal;
+        }
+
+        /**
+         * @return the class carrying the annotation, or declaring the annotated member
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return the annotated field or method, or {@code null} if the class itself is annotated
+         */
+        public String getMemberName() {
+            return memberName;
+        }
+
+        /**
+         * @return the type of the extension, or {@code null} if it could not be resolved
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return short name of the plugin this extension belongs to
+         */
+        public String getPlugin() {
+            return plugin;
+        }
+
+        public double getOrdinal() {
+            return ordinal;
+        }
+
+        @Override
+        public String toString() {
+            return (memberName != null ? className + "." + memberName : className) + " (" + plugin + ")";
+        }
+    }
+}
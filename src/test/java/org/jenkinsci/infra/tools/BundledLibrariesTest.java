@@ -0,0 +1,146 @@
+package org.jenkinsci.infra.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import hudson.init.InitStrategy;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Uses the git-plugin <code>jpi</code>s to test sharing bundled libraries between plugin classloaders.
+ */
+public class BundledLibrariesTest {
+    private static final String pluginDir =
+            BundledLibrariesTest.class.getResource("/git-plugin").getPath();
+    private static final String SNAKEYAML = "WEB-INF/lib/snakeyaml-1.30.jar";
+    private static final String YAML = "org.yaml.snakeyaml.Yaml";
+    private static HyperLocalPluginManager pluginManager;
+    private static BundledLibraries libraries;
+
+    @BeforeAll
+    public static void init() {
+        HyperLocalPluginManager pm = new HyperLocalPluginManager(pluginDir, false);
+        libraries = pm.getPluginStrategy().shareBundledLibraries();
+        pluginManager = new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(pm, new InitStrategy());
+    }
+
+    /**
+     * No two plugins of the fixture bundle the same jar, so there is nothing to share.
+     */
+    @Test
+    public void librariesBundledOnceShouldNotBeShared() {
+        assertEquals(0, libraries.getSharedJarCount());
+    }
+
+    @Test
+    public void stepsShouldBeTheSameAsWithoutSharing() {
+        List<StepDescriptor> steps = pluginManager.getPluginStrategy().findComponents(StepDescriptor.class);
+        assertEquals(47, steps.size());
+        for (StepDescriptor step : steps) {
+            if (step.getFunctionName().equals("checkout")) {
+                assertEquals("workflow-scm-step", pluginManager.getPluginNameForDescriptor(step));
+                return;
+            }
+        }
+        fail("checkout step not found");
+    }
+
+    /**
+     * Adds a plugin bundling the same snakeyaml jar as snakeyaml-api. snakeyaml only depends on the JDK, so it can be
+     * shared.
+     */
+    @Test
+    public void librariesBundledTwiceShouldBeShared(@TempDir File root) throws Exception {
+        bundleLibraryTwice(root);
+        HyperLocalPluginManager pm = new HyperLocalPluginManager(root.getPath(), false);
+        BundledLibraries shared = pm.getPluginStrategy().shareBundledLibraries();
+        new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(pm, new InitStrategy());
+        try (pm) {
+            ClassLoader api = pm.getPlugin("snakeyaml-api").classLoader;
+            ClassLoader copy = pm.getPlugin("snakeyaml-copy").classLoader;
+            Class<?> yaml = Class.forName(YAML, false, api);
+            assertSame(yaml, Class.forName(YAML, false, copy));
+            assertNotSame(api, yaml.getClassLoader());
+
+            assertEquals(1, shared.getSharedJarCount());
+            assertEquals(1, shared.getDeduplicatedJarCount());
+            assertTrue(shared.getDeduplicatedClassCount() > 0, shared.toString());
+            assertTrue(shared.getEstimatedMetaspaceSaved() > 0, shared.toString());
+        }
+    }
+
+    /**
+     * Tests that the classes of a shared jar are still found from the uber classloader, and attributed to the same
+     * plugin as without sharing.
+     */
+    @Test
+    public void sharedLibrariesShouldBeFoundLikeWithoutSharing(@TempDir File root) throws Exception {
+        bundleLibraryTwice(root);
+        String expected;
+        try (HyperLocalPluginManager pm =
+                new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(root.getPath())) {
+            assertEquals(YAML, pm.uberPlusClassLoader.loadClass(YAML).getName());
+            expected = pm.getPluginNameForClass(YAML);
+        }
+        assertTrue(expected.startsWith("snakeyaml-"), expected);
+
+        HyperLocalPluginManager pm = new HyperLocalPluginManager(root.getPath(), false);
+        pm.getPluginStrategy().shareBundledLibraries();
+        new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(pm, new InitStrategy());
+        try (pm) {
+            Class<?> yaml = pm.uberPlusClassLoader.loadClass(YAML);
+            assertNotSame(pm.getPlugin(expected).classLoader, yaml.getClassLoader());
+            assertEquals(expected, pm.getPluginNameForClass(YAML));
+            assertNotNull(pm.uberPlusClassLoader.getResource(YAML.replace('.', '/') + ".class"));
+        }
+    }
+
+    /**
+     * Sets up a plugin directory with snakeyaml-api and a plugin bundling the same snakeyaml jar.
+     */
+    private static void bundleLibraryTwice(File root) throws Exception {
+        File plugins = new File(root, "plugins");
+        assertTrue(plugins.mkdir());
+        File original = new File(pluginDir, "plugins/snakeyaml-api.jpi");
+        Files.copy(original.toPath(), new File(plugins, "snakeyaml-api.jpi").toPath());
+        bundleLibraryOf(original, new File(plugins, "snakeyaml-copy.jpi"), "snakeyaml-copy");
+    }
+
+    /**
+     * Writes a plugin archive that only bundles the snakeyaml jar of another one.
+     */
+    private static void bundleLibraryOf(File original, File copy, String shortName) throws Exception {
+        Manifest manifest = new Manifest();
+        Attributes atts = manifest.getMainAttributes();
+        atts.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        atts.putValue("Short-Name", shortName);
+        atts.putValue("Extension-Name", shortName);
+        atts.putValue("Plugin-Version", "1.0");
+        atts.putValue("Jenkins-Version", "2.204.6");
+        try (ZipFile zip = new ZipFile(original);
+                OutputStream out = Files.newOutputStream(copy.toPath());
+                JarOutputStream jar = new JarOutputStream(out, manifest);
+                InputStream in = zip.getInputStream(zip.getEntry(SNAKEYAML))) {
+            jar.putNextEntry(new ZipEntry(SNAKEYAML));
+            in.transferTo(jar);
+            jar.closeEntry();
+        }
+    }
+}
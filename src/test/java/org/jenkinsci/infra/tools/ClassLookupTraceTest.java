@@ -0,0 +1,143 @@
+package org.jenkinsci.infra.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Uses the git-plugin <code>jpi</code>s to test recording and preloading a <code>ClassLookupTrace</code>.
+ */
+public class ClassLookupTraceTest {
+    private static final Logger LOG = Logger.getLogger(ClassLookupTraceTest.class.getName());
+    private static final String pluginDir =
+            ClassLookupTraceTest.class.getResource("/git-plugin").getPath();
+
+    /** Runs of each kind when timing. */
+    private static final int ROUNDS = 4;
+
+    @TempDir
+    File dir;
+
+    private static HyperLocalPluginManager initialize() {
+        return new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(pluginDir);
+    }
+
+    /**
+     * @return file holding the trace of a run listing the steps
+     */
+    private File record() throws IOException {
+        File file = new File(dir, "classes.txt");
+        try (HyperLocalPluginManager pm = initialize()) {
+            ClassLookupTrace trace = pm.recordClassLookups();
+            assertEquals(47, pm.getPluginStrategy().findComponents(StepDescriptor.class).size());
+            assertTrue(trace.size() > 0);
+            trace.write(file);
+        }
+        return file;
+    }
+
+    @Test
+    public void preloadingShouldFindTheSameStepsAndSkipStaleEntries() throws Exception {
+        File file = record();
+        Files.write(
+                file.toPath(),
+                List.of("git\tno.such.Class", "no-such-plugin\tno.such.OtherClass"),
+                StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+
+        try (HyperLocalPluginManager pm = initialize()) {
+            ClassLookupTrace.Preload preload = ClassLookupTrace.read(file).preload(pm);
+            assertEquals(47, pm.getPluginStrategy().findComponents(StepDescriptor.class).size());
+            assertTrue(preload.getLoadedClassCount() > 0);
+            assertTrue(preload.getStaleEntryCount() >= 2);
+        }
+    }
+
+    /**
+     * Tests that every class is recorded under the plugin defining it, not under a plugin depending on that one.
+     */
+    @Test
+    public void recordedClassesShouldBelongToTheirPlugin() throws Exception {
+        File file = record();
+        try (HyperLocalPluginManager pm = initialize()) {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                String[] entry = line.split("\t");
+                ClassLoader loader = pm.getPlugin(entry[0]).classLoader;
+                assertSame(loader, Class.forName(entry[1], false, loader).getClassLoader(), line);
+            }
+        }
+    }
+
+    /**
+     * Tests that an entry naming a plugin that depends on the one defining the class is stale, so that the class is
+     * not attributed to the dependent plugin.
+     */
+    @Test
+    public void entriesOfDependentPluginsShouldBeStale() throws Exception {
+        File file = new File(dir, "classes.txt");
+        Files.write(file.toPath(), List.of("git\t" + StepDescriptor.class.getName()), StandardCharsets.UTF_8);
+        try (HyperLocalPluginManager pm = initialize()) {
+            ClassLookupTrace.Preload preload = ClassLookupTrace.read(file).preload(pm);
+            assertEquals(0, preload.getLoadedClassCount());
+            assertEquals(1, preload.getStaleEntryCount());
+            assertEquals("workflow-step-api", pm.getPluginNameForClass(StepDescriptor.class.getName()));
+        }
+    }
+
+    /**
+     * Measures the time from the end of the initialization to the first step list, preloading included, with and
+     * without preloading. Which goes first alternates from one round to the next, so that neither always runs on a
+     * warmer JVM; recording the trace serves as a warm-up.
+     *
+     * Not part of the default build; run with {@code mvn test -Dtest=ClassLookupTraceTest -Dbenchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void timeToFirstStepListWithAndWithoutPreloading() throws Exception {
+        File file = record();
+        List<Long> without = new ArrayList<>();
+        List<Long> with = new ArrayList<>();
+        for (int round = 0; round < 2 * ROUNDS; round++) {
+            boolean preloading = round % 4 == 1 || round % 4 == 2;
+            (preloading ? with : without).add(timeToFirstStepList(preloading ? file : null));
+        }
+        LOG.info("Time to the first step list over " + ROUNDS + " runs each: median " + median(without)
+                + " ms without preloading " + without + ", median " + median(with) + " ms with preloading " + with);
+    }
+
+    /**
+     * @param trace trace to preload, if any
+     */
+    private static long timeToFirstStepList(File trace) throws IOException {
+        try (HyperLocalPluginManager pm = initialize()) {
+            long start = System.nanoTime();
+            if (trace != null) {
+                ClassLookupTrace.read(trace).preload(pm);
+            }
+            assertEquals(47, pm.getPluginStrategy().findComponents(StepDescriptor.class).size());
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+
+    private static long median(List<Long> millis) {
+        List<Long> sorted = new ArrayList<>(millis);
+        Collections.sort(sorted);
+        int n = sorted.size();
+        return n % 2 == 1 ? sorted.get(n / 2) : (sorted.get(n / 2 - 1) + sorted.get(n / 2)) / 2;
+    }
+}
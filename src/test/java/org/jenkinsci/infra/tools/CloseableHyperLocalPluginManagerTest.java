@@ -0,0 +1,151 @@
+package org.jenkinsci.infra.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import hudson.PluginWrapper;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Uses the git-plugin <code>jpi</code>s to test that closing a <code>HyperLocalPluginManager</code> releases what it
+ * built.
+ */
+public class CloseableHyperLocalPluginManagerTest {
+    private static final String pluginDir =
+            CloseableHyperLocalPluginManagerTest.class.getResource("/git-plugin").getPath();
+
+    /**
+     * Files the test framework may open meanwhile, such as reports; those of the class path and of the JDK are left
+     * out already.
+     */
+    private static final int FILE_DESCRIPTOR_SLACK = 5;
+
+    @Test
+    public void closeShouldRestoreJenkins() throws Exception {
+        Field holder = Jenkins.class.getDeclaredField("HOLDER");
+        holder.setAccessible(true);
+        Object before = holder.get(null);
+        initializeAndClose();
+        assertSame(before, holder.get(null));
+    }
+
+    /**
+     * Tests that closing plugin managers out of order leaves the mocked Jenkins of the one still open.
+     */
+    @Test
+    public void closeInAnyOrderShouldRestoreJenkins() throws Exception {
+        Field holder = Jenkins.class.getDeclaredField("HOLDER");
+        holder.setAccessible(true);
+        Object before = holder.get(null);
+        HyperLocalPluginManager a = new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(pluginDir);
+        HyperLocalPluginManager b = new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(pluginDir);
+        try {
+            assertSame(b, Jenkins.get().getPluginManager());
+            a.close();
+            assertSame(b, Jenkins.get().getPluginManager());
+        } finally {
+            b.close();
+        }
+        assertSame(before, holder.get(null));
+    }
+
+    @Test
+    public void closeShouldMakeClassLoadersUnreachable() throws Exception {
+        WeakReference<ClassLoader> loader = initializeAndClose();
+        for (int i = 0; i < 50 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        assertNull(loader.get(), "the classloader of the git plugin is still reachable");
+    }
+
+    /**
+     * Compares the files open before the first plugin manager of this test and after closing it.
+     */
+    @Test
+    public void closeShouldReleaseFileDescriptors() throws Exception {
+        assumeTrue(new File("/proc/self/fd").isDirectory(), "needs /proc to list the open files");
+        List<String> before = openFiles();
+        initializeAndClose();
+        List<String> after = openFiles();
+
+        List<String> opened = new ArrayList<>(after);
+        for (String file : before) {
+            opened.remove(file); // other tests may not close their plugin managers
+        }
+        String plugins = new File(pluginDir).getCanonicalPath() + File.separator;
+        List<String> leaked = new ArrayList<>();
+        for (String file : opened) {
+            if (file.startsWith(plugins)) {
+                leaked.add(file);
+            }
+        }
+        assertEquals(Collections.emptyList(), leaked);
+        assertTrue(opened.size() <= FILE_DESCRIPTOR_SLACK, "opened since the start of the test: " + opened);
+    }
+
+    /**
+     * The application classloader keeps the jars of the class path open once it has read from them, and the JDK its
+     * own files, whatever the plugin manager does; those are left out.
+     *
+     * @return the targets of the open file descriptors of this process
+     */
+    private static List<String> openFiles() throws IOException {
+        Set<String> ignored = new HashSet<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            ignored.add(new File(entry).getCanonicalPath());
+        }
+        String jdk = new File(System.getProperty("java.home")).getCanonicalPath() + File.separator;
+        List<String> files = new ArrayList<>();
+        try (DirectoryStream<Path> fds = Files.newDirectoryStream(Paths.get("/proc/self/fd"))) {
+            for (Path fd : fds) {
+                String target;
+                try {
+                    target = Files.readSymbolicLink(fd).toString();
+                } catch (IOException e) {
+                    continue; // closed meanwhile, e.g. the descriptor of this listing
+                }
+                if (!ignored.contains(target) && !target.startsWith(jdk)) {
+                    files.add(target);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Kept in its own method so that nothing on the stack refers to the plugin manager afterwards.
+     *
+     * @return the classloader of the git plugin
+     */
+    private static WeakReference<ClassLoader> initializeAndClose() throws IOException {
+        HyperLocalPluginManager pm = new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(pluginDir);
+        assertEquals(47, pm.getPluginStrategy().findComponents(StepDescriptor.class).size());
+        PluginWrapper git = pm.getPlugin("git");
+        assertNotNull(git);
+        WeakReference<ClassLoader> loader = new WeakReference<>(git.classLoader);
+        pm.close();
+        assertTrue(pm.getPlugins().isEmpty());
+        assertTrue(pm.uberPlusClassLoader.getByPlugin().isEmpty());
+        return loader;
+    }
+}
@@ -0,0 +1,77 @@
+package org.jenkinsci.infra.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.jenkinsci.infra.tools.DescribableIntrospector.TypeGraph;
+import org.jenkinsci.plugins.structs.describable.DescribableModel;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Uses the git-plugin <code>jpi</code>s to test the <code>DescribableIntrospector</code>.
+ */
+public class DescribableIntrospectorTest {
+    private static final String pluginDir =
+            DescribableIntrospectorTest.class.getResource("/git-plugin").getPath();
+    private static HyperLocalPluginManager pluginManager;
+    private static DescribableIntrospector introspector;
+    private static TypeGraph graph;
+
+    @BeforeAll
+    public static void init() {
+        pluginManager = new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(pluginDir);
+        introspector = new DescribableIntrospector(pluginManager);
+        graph = introspector.introspect();
+    }
+
+    @Test
+    public void everyStepShouldBeARoot() {
+        List<StepDescriptor> steps = pluginManager.getPluginStrategy().findComponents(StepDescriptor.class);
+        assertEquals(47, steps.size());
+        for (StepDescriptor step : steps) {
+            assertTrue(graph.getRoots().contains(step.clazz.getName()), step.getFunctionName());
+        }
+    }
+
+    /**
+     * Tests that the models are the same as when built one at a time.
+     */
+    @Test
+    public void modelsShouldMatchSequentialIntrospection() {
+        for (StepDescriptor step : pluginManager.getPluginStrategy().findComponents(StepDescriptor.class)) {
+            DescribableModel<?> model = graph.getModel(step.clazz.getName());
+            assertNotNull(model, step.getFunctionName());
+            assertEquals(DescribableModel.of(step.clazz).toString(), model.toString());
+        }
+    }
+
+    /**
+     * <code>checkout</code> takes any <code>SCM</code>, <code>GitSCM</code> takes a list of remotes.
+     */
+    @Test
+    public void nestedTypesShouldBeInTheGraph() {
+        assertTrue(graph.getNode("org.jenkinsci.plugins.workflow.steps.scm.GenericSCMStep")
+                .getReferences()
+                .contains("hudson.plugins.git.GitSCM"));
+        assertTrue(graph.getNode("hudson.plugins.git.GitSCM")
+                .getReferences()
+                .contains("hudson.plugins.git.UserRemoteConfig"));
+        assertNotNull(graph.getModel("hudson.plugins.git.UserRemoteConfig"));
+    }
+
+    /**
+     * Tests that introspecting again reuses the types introspected already.
+     */
+    @Test
+    public void introspectingAgainShouldUseTheCache() {
+        TypeGraph steps =
+                introspector.introspect(pluginManager.getPluginStrategy().findComponents(StepDescriptor.class));
+        assertSame(graph.getNode("hudson.plugins.git.GitSCM"), steps.getNode("hudson.plugins.git.GitSCM"));
+        assertTrue(steps.getNodes().size() <= graph.getNodes().size());
+    }
+}
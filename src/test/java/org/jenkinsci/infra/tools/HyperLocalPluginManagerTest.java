@@ -4,7 +4,13 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import hudson.PluginWrapper;
+import hudson.model.Descriptor;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import org.jenkinsci.infra.tools.HyperLocalPluginManager.ModClassicPluginStrategy.ComponentsByType;
 import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -81,6 +87,53 @@ public class HyperLocalPluginManagerTest {
         fail("checkout step not found");
     }
 
+    /**
+     * Tests that looking up the steps of a single plugin only finds those.
+     */
+    @Test
+    public void gitPluginShouldOnlyHaveTheGitStep() {
+        List<StepDescriptor> gitSteps =
+                pluginManager.getPluginStrategy().findComponents(StepDescriptor.class, Collections.singleton("git"));
+        assertEquals(1, gitSteps.size());
+        assertEquals("git", gitSteps.get(0).getFunctionName());
+        assertEquals("git", pluginManager.getPluginNameForDescriptor(gitSteps.get(0)));
+    }
+
+    /**
+     * Tests that the steps of all plugins together are the steps found without
+     * restriction, and that extensions get instantiated once.
+     */
+    @Test
+    public void allPluginsShouldHaveAllSteps() {
+        List<String> plugins = new ArrayList<>();
+        plugins.add("core");
+        for (PluginWrapper p : pluginManager.getPlugins()) {
+            plugins.add(p.getShortName());
+        }
+        List<StepDescriptor> all = pluginManager.getPluginStrategy().findComponents(StepDescriptor.class, plugins);
+        assertEquals(steps.size(), all.size());
+        for (StepDescriptor step : all) {
+            assertTrue(steps.contains(step), step.getFunctionName());
+        }
+    }
+
+    /**
+     * Tests that looking up several types at once finds the same, shared, components.
+     */
+    @Test
+    public void batchLookupShouldMatchSingleLookups() {
+        ComponentsByType found =
+                pluginManager.getPluginStrategy().findComponents(Set.of(StepDescriptor.class, Descriptor.class));
+        List<StepDescriptor> batchSteps = found.get(StepDescriptor.class);
+        List<Descriptor> descriptors = found.get(Descriptor.class);
+        assertEquals(steps.size(), batchSteps.size());
+        for (StepDescriptor step : batchSteps) {
+            assertTrue(steps.contains(step), step.getFunctionName());
+            assertTrue(descriptors.contains(step), step.getFunctionName());
+        }
+        assertEquals(pluginManager.getPluginStrategy().findComponents(Descriptor.class).size(), descriptors.size());
+    }
+
     /**
      * Tests if the reactor reaches the last milestone required to initialize the
      * plugin manager.
@@ -0,0 +1,95 @@
+package org.jenkinsci.infra.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import hudson.init.InitStrategy;
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+/**
+ * Uses the git-plugin <code>jpi</code>s to test the lazy mode of the <code>HyperLocalPluginManager</code>.
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class LazyHyperLocalPluginManagerTest {
+    private static final String pluginDir =
+            LazyHyperLocalPluginManagerTest.class.getResource("/git-plugin").getPath();
+    private static HyperLocalPluginManager pluginManager;
+
+    @BeforeAll
+    public static void init() {
+        HyperLocalPluginManager lazy = new HyperLocalPluginManager(pluginDir, false, true);
+        pluginManager = new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(lazy, new InitStrategy());
+    }
+
+    @Test
+    @Order(1)
+    public void inspectionShouldNotActivatePlugins() {
+        assertTrue(pluginManager.getInspectedPluginCount() > 0);
+        assertEquals(0, pluginManager.getActivatedPluginCount());
+    }
+
+    /**
+     * Tests that finding out where a class comes from only activates its plugin
+     * and the plugins it depends on.
+     */
+    @Test
+    @Order(2)
+    public void classLookupShouldActivateFewPlugins() {
+        assertEquals(
+                "workflow-step-api", pluginManager.getPluginNameForClass("org.jenkinsci.plugins.workflow.steps.Step"));
+        int activated = pluginManager.getActivatedPluginCount();
+        assertTrue(activated > 0);
+        assertTrue(activated < pluginManager.getInspectedPluginCount());
+    }
+
+    /**
+     * Tests that listing the steps only activates the plugins that have some, with the plugins they depend on.
+     */
+    @Test
+    @Order(3)
+    public void stepsShouldBeTheSameAsEagerMode() {
+        List<StepDescriptor> steps = pluginManager.getPluginStrategy().findComponents(StepDescriptor.class);
+        assertEquals(47, steps.size());
+        assertTrue(pluginManager.getActivatedPluginCount() < pluginManager.getInspectedPluginCount());
+        for (StepDescriptor step : steps) {
+            if (step.getFunctionName().equals("checkout")) {
+                assertEquals("workflow-scm-step", pluginManager.getPluginNameForDescriptor(step));
+                return;
+            }
+        }
+        fail("checkout step not found");
+    }
+
+    @Test
+    @Order(4)
+    public void inspectedDependenciesShouldCoverAllPlugins() {
+        Map<String, List<String>> dependencies = pluginManager.getInspectedDependencies();
+        assertEquals(pluginManager.getInspectedPluginCount(), dependencies.size());
+        assertTrue(dependencies.get("git").contains("git-client"));
+    }
+
+    /**
+     * Tests that reading the central directories finds the same directories as reading every entry.
+     */
+    @Test
+    @Order(5)
+    public void classPathDirectoriesShouldMatchTheEntries() throws Exception {
+        for (File arc : PluginArchive.list(new File(pluginDir, "plugins"))) {
+            PluginArchive archive = PluginArchive.read(arc);
+            Set<String> expected = new HashSet<>();
+            archive.forEachClassPathEntry((path, in) -> expected.add(PluginArchive.directoryOf(path)));
+            assertEquals(expected, archive.readClassPathDirectories(), arc.getName());
+        }
+    }
+}
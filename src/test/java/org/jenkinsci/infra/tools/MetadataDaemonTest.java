@@ -0,0 +1,149 @@
+package org.jenkinsci.infra.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Uses the git-plugin <code>jpi</code>s to test the <code>MetadataDaemon</code> on localhost.
+ */
+public class MetadataDaemonTest {
+    private static final String pluginDir =
+            MetadataDaemonTest.class.getResource("/git-plugin").getPath();
+    private static final HttpClient client = HttpClient.newHttpClient();
+    private static MetadataDaemon daemon;
+
+    @BeforeAll
+    public static void init() throws Exception {
+        HyperLocalPluginManager pm = new HyperLocalPluginManagerInit().initializeHyperLocalPluginManager(pluginDir);
+        daemon = new MetadataDaemon(pm);
+        daemon.start(0);
+    }
+
+    @AfterAll
+    public static void shutdown() {
+        daemon.close();
+    }
+
+    private static HttpResponse<String> get(String query) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + daemon.getPort() + query))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sends the request target as is, which {@link URI} would reject if it is not a valid URI.
+     *
+     * @return the status code
+     */
+    private static int getRaw(String target) throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", daemon.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET " + target + " HTTP/1.1\r\nHost: 127.0.0.1\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            BufferedReader in =
+                    new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            // e.g. HTTP/1.1 400 Bad Request
+            return Integer.parseInt(in.readLine().split(" ")[1]);
+        }
+    }
+
+    @Test
+    public void stepsShouldBeFortySeven() throws Exception {
+        HttpResponse<String> response = get("/steps");
+        assertEquals(200, response.statusCode());
+        assertEquals(47, JSONArray.fromObject(response.body()).size());
+    }
+
+    @Test
+    public void stepDescriptorComponentsShouldBeFortySeven() throws Exception {
+        HttpResponse<String> response =
+                get("/components?type=org.jenkinsci.plugins.workflow.steps.StepDescriptor");
+        assertEquals(200, response.statusCode());
+        assertEquals(47, JSONArray.fromObject(response.body()).size());
+    }
+
+    @Test
+    public void gitStepShouldBelongToGit() throws Exception {
+        HttpResponse<String> response = get("/plugin?class=jenkins.plugins.git.GitStep");
+        assertEquals(200, response.statusCode());
+        assertEquals("git", JSONObject.fromObject(response.body()).getString("plugin"));
+    }
+
+    @Test
+    public void gitShouldDependOnGitClient() throws Exception {
+        HttpResponse<String> response = get("/dependencies?plugin=git");
+        assertEquals(200, response.statusCode());
+        boolean found = false;
+        for (Object d : JSONObject.fromObject(response.body()).getJSONArray("dependencies")) {
+            if ("git-client".equals(((JSONObject) d).getString("plugin"))) {
+                found = true;
+            }
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void unknownQueriesShouldFail() throws Exception {
+        assertEquals(404, get("/nothing").statusCode());
+        assertEquals(404, get("/dependencies?plugin=no-such-plugin").statusCode());
+        assertEquals(400, get("/components").statusCode());
+        // malformed escapes: a bad request whether the server or the query parsing notices
+        assertEquals(400, getRaw("/plugin?class=%zz"));
+        assertEquals(400, getRaw("/plugin?class=%"));
+    }
+
+    /**
+     * Tests that the order of the parameters does not matter, and that unknown classes are not cached.
+     */
+    @Test
+    public void cacheShouldIgnoreParameterOrderAndUnknownClasses() throws Exception {
+        assertEquals(200, get("/components?type=hudson.scm.SCMDescriptor&order=1").statusCode());
+        int cached = daemon.getCachedResponseCount();
+        assertEquals(200, get("/components?order=1&type=hudson%2Escm%2ESCMDescriptor").statusCode());
+        assertEquals(200, get("/plugin?class=no.such.Class").statusCode());
+        assertEquals(404, get("/components?type=no.such.Class").statusCode());
+        assertEquals(cached, daemon.getCachedResponseCount());
+    }
+
+    /**
+     * Tests that concurrent identical queries all get the same answer.
+     */
+    @Test
+    public void concurrentQueriesShouldAgree() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<HttpResponse<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                responses.add(pool.submit(() -> get("/components?type=hudson.scm.SCMDescriptor")));
+            }
+            String expected = responses.get(0).get().body();
+            for (Future<HttpResponse<String>> response : responses) {
+                assertEquals(200, response.get().statusCode());
+                assertEquals(expected, response.get().body());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
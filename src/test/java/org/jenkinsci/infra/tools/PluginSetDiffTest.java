@@ -0,0 +1,102 @@
+package org.jenkinsci.infra.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.jenkinsci.infra.tools.MetadataSnapshot.PluginMetadata;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Uses the git-plugin <code>jpi</code>s to test the <code>PluginSetDiff</code>.
+ */
+public class PluginSetDiffTest {
+    private static final String pluginDir =
+            PluginSetDiffTest.class.getResource("/git-plugin").getPath();
+    private static MetadataSnapshot snapshot;
+
+    @BeforeAll
+    public static void init() throws Exception {
+        snapshot = PluginSetDiff.snapshot(pluginDir);
+    }
+
+    @Test
+    public void snapshotShouldHaveFortySevenSteps() {
+        int steps = 0;
+        for (PluginMetadata p : snapshot.getPlugins().values()) {
+            steps += p.getSteps().size();
+        }
+        assertEquals(47, steps);
+        assertTrue(snapshot.getPlugin("workflow-scm-step").getSteps().containsKey("checkout"));
+    }
+
+    /**
+     * The SCMs accepted by <code>checkout</code> depend on the plugins loaded, so they must not be part of its
+     * signature.
+     */
+    @Test
+    public void signatureShouldOnlyHaveDeclaredParameterTypes() {
+        String checkout = snapshot.getPlugin("workflow-scm-step").getSteps().get("checkout");
+        assertTrue(checkout.contains("scm: hudson.scm.SCM"), checkout);
+        assertFalse(checkout.contains("GitSCM"), checkout);
+    }
+
+    /**
+     * Unlike the subtypes of an abstract type, the element type of a collection is part of the signature.
+     */
+    @Test
+    public void signatureShouldHaveElementTypes() {
+        String withEnv = snapshot.getPlugin("workflow-basic-steps").getSteps().get("withEnv");
+        assertTrue(withEnv.contains("overrides: java.util.List<java.lang.String>"), withEnv);
+        String properties = snapshot.getPlugin("workflow-multibranch").getSteps().get("properties");
+        assertTrue(properties.contains("properties: java.util.List<hudson.model.JobProperty>"), properties);
+    }
+
+    /**
+     * Tests that nothing gets loaded when no archive changed.
+     */
+    @Test
+    public void unchangedPluginSetShouldLoadNothing() throws Exception {
+        PluginSetDiff diff = PluginSetDiff.compute(snapshot, pluginDir);
+        assertTrue(diff.getAffectedPlugins().isEmpty());
+        assertTrue(diff.getLoadedPlugins().isEmpty());
+        assertTrue(diff.getChanges().isEmpty());
+        assertEquals(snapshot.getPlugins().keySet(), diff.getSnapshot().getPlugins().keySet());
+    }
+
+    /**
+     * Pretends <code>checkout</code> was added to a new version of workflow-scm-step.
+     */
+    @Test
+    public void changedPluginShouldReportAddedStep() throws Exception {
+        SortedMap<String, PluginMetadata> plugins = new TreeMap<>(snapshot.getPlugins());
+        PluginMetadata scmStep = plugins.get("workflow-scm-step");
+        SortedMap<String, String> steps = new TreeMap<>(scmStep.getSteps());
+        steps.remove("checkout");
+        plugins.put("workflow-scm-step", new PluginMetadata("0", steps, scmStep.getExtensions()));
+
+        PluginSetDiff diff = PluginSetDiff.compute(new MetadataSnapshot(plugins), pluginDir);
+        assertTrue(diff.getAffectedPlugins().contains("workflow-scm-step"));
+        assertTrue(diff.getAffectedPlugins().contains("git"));
+        assertFalse(diff.getAffectedPlugins().contains("jquery3-api"));
+        assertTrue(diff.getChanges().get("workflow-scm-step").getAddedSteps().contains("checkout"));
+        assertEquals(1, diff.getChanges().size());
+    }
+
+    @Test
+    public void snapshotShouldRoundTrip(@TempDir File tmp) throws Exception {
+        File file = new File(tmp, "snapshot.json");
+        snapshot.write(file);
+        MetadataSnapshot read = MetadataSnapshot.read(file);
+        assertEquals(snapshot.getPlugins().keySet(), read.getPlugins().keySet());
+        PluginMetadata git = read.getPlugin("git");
+        assertEquals(snapshot.getPlugin("git").getDigest(), git.getDigest());
+        assertEquals(snapshot.getPlugin("git").getSteps(), git.getSteps());
+        assertEquals(snapshot.getPlugin("git").getExtensions(), git.getExtensions());
+    }
+}
@@ -0,0 +1,85 @@
+package org.jenkinsci.infra.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+import org.jenkinsci.infra.tools.StaticExtensionScanner.StaticExtension;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Uses the git-plugin <code>jpi</code>s to test the <code>StaticExtensionScanner</code>.
+ */
+public class StaticExtensionScannerTest {
+    private static final String pluginDir =
+            StaticExtensionScannerTest.class.getResource("/git-plugin").getPath();
+    private static StaticExtensionScanner scanner = new StaticExtensionScanner();
+    private static List<StaticExtension> steps;
+
+    @BeforeAll
+    public static void init() {
+        scanner.scan(new File(pluginDir, "plugins"));
+        steps = scanner.findExtensions(StepDescriptor.class);
+    }
+
+    /**
+     * Tests if the static scan finds the same steps as <code>HyperLocalPluginManager</code>.
+     */
+    @Test
+    public void TotalStepsShouldBeFortySeven() {
+        assertEquals(47, steps.size());
+    }
+
+    @Test
+    public void gitStepShouldBelongToGit() {
+        for (StaticExtension step : steps) {
+            if (step.getClassName().equals("jenkins.plugins.git.GitStep$DescriptorImpl")) {
+                assertEquals("git", step.getPlugin());
+                return;
+            }
+        }
+        fail("git step not found");
+    }
+
+    /**
+     * Tests that the type of an extension declared on a field is that of the field.
+     */
+    @Test
+    public void fieldExtensionShouldHaveFieldType() {
+        for (StaticExtension e : scanner.getExtensions()) {
+            if (e.getClassName().equals("hudson.matrix.MatrixProject") && "DESCRIPTOR".equals(e.getMemberName())) {
+                assertEquals("hudson.matrix.MatrixProject$DescriptorImpl", e.getType());
+                assertTrue(scanner.getSupertypes(e.getType()).contains("hudson.model.Descriptor"));
+                return;
+            }
+        }
+        fail("MatrixProject.DESCRIPTOR not found");
+    }
+
+    /**
+     * Tests that a later scan completes the type hierarchy resolved by an earlier one.
+     */
+    @Test
+    public void laterScanShouldCompleteSupertypes() throws Exception {
+        File plugins = new File(pluginDir, "plugins");
+        try (URLClassLoader nothing = new URLClassLoader(new URL[0], null)) {
+            StaticExtensionScanner s = new StaticExtensionScanner(nothing);
+            s.scan(Collections.singletonList(new File(plugins, "git.jpi")));
+            String gitStep = "jenkins.plugins.git.GitStep$DescriptorImpl";
+            assertFalse(s.getSupertypes(gitStep).contains(StepDescriptor.class.getName()));
+
+            s.scan(List.of(new File(plugins, "workflow-scm-step.jpi"), new File(plugins, "workflow-step-api.jpi")));
+            assertTrue(s.getSupertypes(gitStep).contains(StepDescriptor.class.getName()));
+            assertTrue(s.findExtensions(StepDescriptor.class).stream()
+                    .anyMatch(e -> e.getClassName().equals(gitStep)));
+        }
+    }
+}